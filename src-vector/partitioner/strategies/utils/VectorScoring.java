@@ -0,0 +1,86 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// VectorScoring.java: scores all the partitions of an edge with the (incubating) Vector API, used with -scoring vector
+// compiled apart from src, with --add-modules jdk.incubator.vector (see README), and loaded by VectorKernel.load
+
+package partitioner.strategies.utils;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+public class VectorScoring implements VectorKernel{
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> BITS = LongVector.SPECIES_PREFERRED; //as many lanes as SPECIES
+    private static final int LANES = SPECIES.length(); //a power of two up to 8, a vector never spans two replica words
+    private static final LongVector LANE_SHIFTS; //0, 1, .., LANES-1
+    static {
+        long[] shifts = new long[LANES];
+        for (int i = 0; i<LANES; i++){ shifts[i] = i; }
+        LANE_SHIFTS = LongVector.fromArray(BITS, shifts, 0);
+    }
+
+    //score of partition m: ru if u is replicated in m, plus rv if v is, plus lambda*max(0, (MAX_LOAD-load_m)/range),
+    //computed with the same operations, in the same order, as the scalar loops of HDRF and Greedy (same scores, same ties)
+    //reads c.loads, c.u_partitions and c.v_partitions, leaves the partitions with the highest score in c and returns it
+    //the replica bits become 0/1 lanes by shift and mask rather than through a VectorMask, which jdk 17 boxes on every step
+    @Override
+    public double score(Candidates c, int P, double ru, double rv, double lambda, int MAX_LOAD, double range){
+        int[] loads = c.loads;
+        long[] u_partitions = c.u_partitions;
+        long[] v_partitions = c.v_partitions;
+        double[] scores = c.scores;
+        for (int m = 0; m<P; m++){ scores[m] = MAX_LOAD-loads[m]; }
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        DoubleVector best = zero;
+        int bound = SPECIES.loopBound(P);
+        int m = 0;
+        for (; m<bound; m+=LANES){
+            DoubleVector in_u = (DoubleVector) LongVector.broadcast(BITS, u_partitions[m>>>6] >>> (m & 63))
+                    .lanewise(VectorOperators.LSHR, LANE_SHIFTS).and(1L).convert(VectorOperators.L2D, 0);
+            DoubleVector in_v = (DoubleVector) LongVector.broadcast(BITS, v_partitions[m>>>6] >>> (m & 63))
+                    .lanewise(VectorOperators.LSHR, LANE_SHIFTS).and(1L).convert(VectorOperators.L2D, 0);
+            DoubleVector bal = DoubleVector.fromArray(SPECIES, scores, m).div(range).max(zero);
+            DoubleVector score = in_u.mul(ru).add(in_v.mul(rv)).add(bal.mul(lambda));
+            score.intoArray(scores, m);
+            best = best.max(score);
+        }
+        double MAX_SCORE = best.reduceLanes(VectorOperators.MAX);
+        for (; m<P; m++){
+            double fu = ((u_partitions[m>>>6] & (1L << m))!=0) ? ru : 0;
+            double fv = ((v_partitions[m>>>6] & (1L << m))!=0) ? rv : 0;
+            double bal = scores[m] / range;
+            if (bal<0){ bal = 0; }
+            scores[m] = fu + fv + lambda*bal;
+            if (scores[m]>MAX_SCORE){ MAX_SCORE = scores[m]; }
+        }
+        c.clear();
+        for (m = 0; m<P; m++){
+            if (scores[m]==MAX_SCORE){ c.add(m); }
+        }
+        return MAX_SCORE;
+    }
+}
@@ -28,8 +28,9 @@ package application;
 public class Globals {
     
     //CONSTANT
-    public int SLEEP_LIMIT = 1024;
     public final static int PLACES = 4;
+    public final static int STREAM_BATCH_SIZE = 4096; //edges per batch in streaming ingestion
+    public final static int STREAM_QUEUE_BATCHES = 64; //batches buffered between reader and partitioner threads
     
     //APPLICATION PARAMETERS
     //MANDATORY
@@ -40,6 +41,26 @@ public class Globals {
     public double LAMBDA = 1;    
     public int THREADS = Runtime.getRuntime().availableProcessors();
     public String OUTPUT_FILE_NAME;
+    public String INGEST = "memory"; // "memory", "stream", "external"
+    public int RUN_SIZE = 1<<24; //edges sorted in memory per run by external ingestion
+    public String TMP_DIR = System.getProperty("java.io.tmpdir"); //where external ingestion spills its runs
+    public String SHUFFLE = "parallel"; // "parallel", "sequential", "block", "chunks", "none"
+    public long SEED = System.nanoTime(); //seed of the shuffle
+    public String DEGREE = "partial"; // "partial", "exact"
+    public boolean REMAP = false; //remap the vertex ids to 0..vertices-1 while loading
+    public String STATE = "auto"; // "auto", "map", "array", "offheap"
+    public String STATE_FILE = null; //file backing the offheap state, null for direct memory
+    public String CHECKPOINT = null; //file where the snapshots of the run are written, null for none
+    public int CHECKPOINT_INTERVAL = 600; //seconds between two snapshots
+    public String RESUME = null; //checkpoint to continue from, null to start from scratch
+    public String PREVIOUS = null; //output prefix of a previous run, the graphfile then holds only the new edges
+    public String SCORING = "scalar"; // "scalar", "vector", "sparse"
+    public String COORDINATION = "coordinated"; // "coordinated", "oblivious"
+    public int SYNC_INTERVAL = 100000; //edges assigned by an oblivious thread between two merges, 0 never
+    public String EXECUTION = "inline"; // "inline", "deferred", "batch", "sharded", "optimistic"
+    public int BATCH_WINDOW = 65536; //edges colored together by -execution batch
+    public boolean DEDUP = true; //remove duplicated edges while loading
+    public boolean OFFHEAP = false; //keep the loaded edges in direct memory
     
     public Globals(String[] args){
         parse_arguments(args);
@@ -73,23 +94,211 @@ public class Globals {
                 else if(args[i].equalsIgnoreCase("-output")){
                     OUTPUT_FILE_NAME = args[i+1];
                 }
+                else if(args[i].equalsIgnoreCase("-dedup")){
+                    if (args[i+1].equalsIgnoreCase("true")){ DEDUP = true; }
+                    else if (args[i+1].equalsIgnoreCase("false")){ DEDUP = false; }
+                    else throw new IllegalArgumentException();
+                }
+                else if(args[i].equalsIgnoreCase("-offheap")){
+                    if (args[i+1].equalsIgnoreCase("true")){ OFFHEAP = true; }
+                    else if (args[i+1].equalsIgnoreCase("false")){ OFFHEAP = false; }
+                    else throw new IllegalArgumentException();
+                }
+                else if(args[i].equalsIgnoreCase("-ingest")){
+                    INGEST = args[i+1];
+                    if (INGEST.equalsIgnoreCase("memory")){}
+                    else if (INGEST.equalsIgnoreCase("stream")){}
+                    else if (INGEST.equalsIgnoreCase("external")){}
+                    else{
+                        System.out.println("\nInvalid ingestion mode "+INGEST+". Aborting.");
+                        System.out.println("Valid ingestion modes: memory, stream, external.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-run_size")){
+                    RUN_SIZE = Integer.parseInt(args[i+1]);
+                    if (RUN_SIZE<1){ throw new IllegalArgumentException(); }
+                }
+                else if(args[i].equalsIgnoreCase("-tmp")){
+                    TMP_DIR = args[i+1];
+                }
+                else if(args[i].equalsIgnoreCase("-shuffle")){
+                    SHUFFLE = args[i+1];
+                    if (SHUFFLE.equalsIgnoreCase("parallel")){}
+                    else if (SHUFFLE.equalsIgnoreCase("sequential")){}
+                    else if (SHUFFLE.equalsIgnoreCase("block")){}
+                    else if (SHUFFLE.equalsIgnoreCase("chunks")){}
+                    else if (SHUFFLE.equalsIgnoreCase("none")){}
+                    else{
+                        System.out.println("\nInvalid shuffle "+SHUFFLE+". Aborting.");
+                        System.out.println("Valid shuffles: parallel, sequential, block, chunks, none.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-degree")){
+                    DEGREE = args[i+1];
+                    if (DEGREE.equalsIgnoreCase("partial")){}
+                    else if (DEGREE.equalsIgnoreCase("exact")){}
+                    else{
+                        System.out.println("\nInvalid degree "+DEGREE+". Aborting.");
+                        System.out.println("Valid degrees: partial, exact.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-state")){
+                    STATE = args[i+1];
+                    if (STATE.equalsIgnoreCase("auto")){}
+                    else if (STATE.equalsIgnoreCase("map")){}
+                    else if (STATE.equalsIgnoreCase("array")){}
+                    else if (STATE.equalsIgnoreCase("offheap")){}
+                    else{
+                        System.out.println("\nInvalid state "+STATE+". Aborting.");
+                        System.out.println("Valid states: auto, map, array, offheap.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-state_file")){
+                    STATE_FILE = args[i+1];
+                }
+                else if(args[i].equalsIgnoreCase("-checkpoint")){
+                    CHECKPOINT = args[i+1];
+                }
+                else if(args[i].equalsIgnoreCase("-checkpoint_interval")){
+                    CHECKPOINT_INTERVAL = Integer.parseInt(args[i+1]);
+                    if (CHECKPOINT_INTERVAL<=0){ throw new IllegalArgumentException(); }
+                }
+                else if(args[i].equalsIgnoreCase("-resume")){
+                    RESUME = args[i+1];
+                }
+                else if(args[i].equalsIgnoreCase("-previous")){
+                    PREVIOUS = args[i+1];
+                }
+                else if(args[i].equalsIgnoreCase("-scoring")){
+                    SCORING = args[i+1];
+                    if (SCORING.equalsIgnoreCase("scalar")){}
+                    else if (SCORING.equalsIgnoreCase("vector")){}
+                    else if (SCORING.equalsIgnoreCase("sparse")){}
+                    else{
+                        System.out.println("\nInvalid scoring "+SCORING+". Aborting.");
+                        System.out.println("Valid scorings: scalar, vector, sparse.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-coordination")){
+                    COORDINATION = args[i+1];
+                    if (COORDINATION.equalsIgnoreCase("coordinated")){}
+                    else if (COORDINATION.equalsIgnoreCase("oblivious")){}
+                    else{
+                        System.out.println("\nInvalid coordination "+COORDINATION+". Aborting.");
+                        System.out.println("Valid coordinations: coordinated, oblivious.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-sync_interval")){
+                    SYNC_INTERVAL = Integer.parseInt(args[i+1]);
+                    if (SYNC_INTERVAL<0){ throw new IllegalArgumentException(); }
+                }
+                else if(args[i].equalsIgnoreCase("-execution")){
+                    EXECUTION = args[i+1];
+                    if (EXECUTION.equalsIgnoreCase("inline")){}
+                    else if (EXECUTION.equalsIgnoreCase("deferred")){}
+                    else if (EXECUTION.equalsIgnoreCase("batch")){}
+                    else if (EXECUTION.equalsIgnoreCase("sharded")){}
+                    else if (EXECUTION.equalsIgnoreCase("optimistic")){}
+                    else{
+                        System.out.println("\nInvalid execution "+EXECUTION+". Aborting.");
+                        System.out.println("Valid executions: inline, deferred, batch, sharded, optimistic.\n");
+                        System.exit(-1);
+                    }
+                }
+                else if(args[i].equalsIgnoreCase("-batch_window")){
+                    BATCH_WINDOW = Integer.parseInt(args[i+1]);
+                    if (BATCH_WINDOW<=0){ throw new IllegalArgumentException(); }
+                }
+                else if(args[i].equalsIgnoreCase("-remap")){
+                    if (args[i+1].equalsIgnoreCase("true")){ REMAP = true; }
+                    else if (args[i+1].equalsIgnoreCase("false")){ REMAP = false; }
+                    else throw new IllegalArgumentException();
+                }
+                else if(args[i].equalsIgnoreCase("-seed")){
+                    SEED = Long.parseLong(args[i+1]);
+                }
                 else throw new IllegalArgumentException();
             }
         } catch (Exception e){
             System.out.println("\nInvalid arguments ["+args.length+"]. Aborting.\n");
             System.out.println("Usage:\n VGP graphfile nparts [options]\n");
             System.out.println("Parameters:");
-            System.out.println(" graphfile: the name of the file that stores the graph to be partitioned.");
-            System.out.println(" nparts: the number of parts that the graph will be partitioned into. Maximum value 256.");
+            System.out.println(" graphfile: the name of the file that stores the graph to be partitioned (one edge per line, tab or space separated).");
+            System.out.println(" nparts: the number of parts that the graph will be partitioned into.");
             System.out.println("\nOptions:");
             System.out.println(" -algorithm string");
             System.out.println("\t specifies the algorithm to be used (hdrf greedy hashing grid pds dbh). Default hdrf.");
             System.out.println(" -lambda double");
             System.out.println("\t specifies the lambda parameter for hdrf. Default 1.");
+            System.out.println(" -degree string");
+            System.out.println("\t specifies the vertex degrees used by hdrf and dbh (partial exact). Default partial.");
+            System.out.println("\t partial counts the degrees while the edges are streamed, exact uses the degrees computed while loading the graph, in a table indexed by vertex id: it needs non-negative ids not much larger than twice the edges (see -remap).");
+            System.out.println(" -state string");
+            System.out.println("\t specifies how the partition state keeps the vertex records (auto map array offheap). Default auto.");
+            System.out.println("\t map uses a synchronized hash map, array uses a lock-free array indexed by vertex id (dense non-negative ids, see -remap).");
+            System.out.println("\t offheap keeps the records of the array state in direct memory, or in the file given by -state_file, outside the java heap.");
+            System.out.println("\t auto uses the array when the vertex id range is known and dense, the map otherwise.");
+            System.out.println(" -state_file string");
+            System.out.println("\t specifies a file backing the offheap state, so that the records can exceed the available memory (its content is overwritten). Only with -state offheap.");
+            System.out.println(" -checkpoint string");
+            System.out.println("\t specifies a file where a snapshot of the partitioning is periodically written, so that an interrupted run can be resumed (see -resume).");
+            System.out.println("\t the file is deleted when the partitioning completes.");
+            System.out.println(" -checkpoint_interval integer");
+            System.out.println("\t specifies the seconds between two snapshots. Default 600.");
+            System.out.println(" -resume string");
+            System.out.println("\t specifies a checkpoint to continue from. The graph, nparts, algorithm, -threads, -shuffle, -remap, -dedup and -output must be those of the interrupted run.");
+            System.out.println(" -previous string");
+            System.out.println("\t specifies the output prefix of a previous run (prefix.vertices, prefix.edges and prefix.info). Its partitioning is loaded and only the edges of graphfile,");
+            System.out.println("\t which must be new, are partitioned on top of it. The output then describes the whole graph. The hashing strategies reuse the hash of prefix.info.");
+            System.out.println(" -scoring string");
+            System.out.println("\t specifies how hdrf and greedy score the partitions of each edge (scalar vector sparse). Default scalar.");
+            System.out.println("\t vector scores several partitions per instruction with the Vector API, it needs the classes of src-vector and java run with --add-modules jdk.incubator.vector.");
+            System.out.println("\t sparse scores only the partitions that replicate an endpoint, plus the least loaded ones found through an index (same result, for large nparts).");
+            System.out.println(" -coordination string");
+            System.out.println("\t specifies whether the threads share one partition state (coordinated oblivious). Default coordinated.");
+            System.out.println("\t oblivious threads score against their own copy of the state, merged into the shared one every -sync_interval edges.");
+            System.out.println(" -sync_interval integer");
+            System.out.println("\t specifies how many edges an oblivious thread assigns between two merges, 0 to merge only at the end. Default 100000.");
+            System.out.println(" -execution string");
+            System.out.println("\t specifies how the threads apply each assignment to the partition state (inline deferred batch sharded optimistic). Default inline.");
+            System.out.println("\t deferred (hashing dbh grid pds) assigns the edges without locks and builds the replicas in a second parallel pass.");
+            System.out.println("\t batch splits each window of edges in rounds with no common vertex, run in parallel without locks.");
+            System.out.println("\t sharded gives each thread the records of a hash range of vertices, the threads exchange messages instead of taking locks (not with -state map).");
+            System.out.println("\t optimistic (hdrf) scores without locks and locks the two vertices only to apply the assignment, if they did not change meanwhile.");
+            System.out.println(" -batch_window integer");
+            System.out.println("\t specifies how many edges -execution batch splits in rounds at a time. Default 65536.");
             System.out.println(" -threads integer");
             System.out.println("\t specifies the number of threads used by the application. Default all available processors.");
             System.out.println(" -output string");
             System.out.println("\t specifies the prefix for the name of the files where the output will be stored (files: prefix.info, prefix.edges and prefix.vertices).");
+            System.out.println(" -dedup boolean");
+            System.out.println("\t specifies whether duplicated edges are removed while loading the graph (true false). Default true.");
+            System.out.println("\t use false only for inputs already known to be free of duplicates.");
+            System.out.println(" -offheap boolean");
+            System.out.println("\t specifies whether the loaded edges are kept outside the Java heap (true false). Default false.");
+            System.out.println(" -ingest string");
+            System.out.println("\t specifies how the graph is fed to the partitioner (memory stream external). Default memory.");
+            System.out.println("\t stream never loads the whole graph: edges flow from the file to the partitioner in file order, without removing duplicates.");
+            System.out.println("\t external removes duplicates and shuffles the edges through temporary files, for graphs larger than the main memory.");
+            System.out.println(" -remap boolean");
+            System.out.println("\t specifies whether the vertex ids are remapped to 0..vertices-1 while loading, so that the partition state can be kept in arrays (true false). Default false.");
+            System.out.println("\t the output files always report the original ids.");
+            System.out.println(" -shuffle string");
+            System.out.println("\t specifies how the loaded edges are shuffled before partitioning (parallel sequential block chunks none). Default parallel.");
+            System.out.println("\t parallel and sequential permute single edges, block permutes blocks of edges and then the edges inside each block,");
+            System.out.println("\t chunks does not move the edges but assigns blocks of edges to the threads in random order.");
+            System.out.println(" -seed long");
+            System.out.println("\t specifies the seed of the shuffle, also of the external ingestion. Default random.");
+            System.out.println(" -run_size integer");
+            System.out.println("\t specifies how many edges external ingestion sorts in main memory at a time. Default 16777216.");
+            System.out.println(" -tmp string");
+            System.out.println("\t specifies the directory where external ingestion writes its temporary files. Default the system temporary directory.");
             System.out.println();
             System.exit(-1);
         }
@@ -101,7 +310,24 @@ public class Globals {
         System.out.print("\talgorithm: "+PARTITION_STRATEGY);
         if (PARTITION_STRATEGY.equalsIgnoreCase("hdrf")){ System.out.println(" (lambda: "+LAMBDA+")"); }
         else System.out.println("");
+        if (DEGREE.equalsIgnoreCase("exact")){ System.out.println("\tdegree: "+DEGREE); }
         System.out.println("\tthreads: "+THREADS);
         if (OUTPUT_FILE_NAME!=null){ System.out.println("\toutput: "+OUTPUT_FILE_NAME); }
+        System.out.println("\tingest: "+INGEST);
+        if (INGEST.equalsIgnoreCase("external")){ System.out.println("\trun size: "+RUN_SIZE+" (tmp: "+TMP_DIR+")"); }
+        if (!DEDUP){ System.out.println("\tdedup: "+DEDUP); }
+        if (OFFHEAP){ System.out.println("\toffheap: "+OFFHEAP); }
+        if (REMAP){ System.out.println("\tremap: "+REMAP); }
+        if (!STATE.equalsIgnoreCase("auto")){ System.out.println("\tstate: "+STATE); }
+        if (STATE_FILE!=null){ System.out.println("\tstate file: "+STATE_FILE); }
+        if (CHECKPOINT!=null){ System.out.println("\tcheckpoint: "+CHECKPOINT+" (every "+CHECKPOINT_INTERVAL+" seconds)"); }
+        if (RESUME!=null){ System.out.println("\tresume: "+RESUME); }
+        if (PREVIOUS!=null){ System.out.println("\tprevious: "+PREVIOUS); }
+        if (!SCORING.equalsIgnoreCase("scalar")){ System.out.println("\tscoring: "+SCORING); }
+        if (EXECUTION.equalsIgnoreCase("batch")){ System.out.println("\texecution: "+EXECUTION+" (window: "+BATCH_WINDOW+")"); }
+        else if (!EXECUTION.equalsIgnoreCase("inline")){ System.out.println("\texecution: "+EXECUTION); }
+        if (!COORDINATION.equalsIgnoreCase("coordinated")){ System.out.println("\tcoordination: "+COORDINATION+" (sync interval: "+SYNC_INTERVAL+")"); }
+        if (INGEST.equalsIgnoreCase("memory")){ System.out.println("\tshuffle: "+SHUFFLE+" (seed: "+SEED+")"); }
+        else if (INGEST.equalsIgnoreCase("external")){ System.out.println("\tshuffle: external (seed: "+SEED+")"); }
     }
 }
@@ -25,16 +25,26 @@
 
 package application;
 
-import core.Edge;
+import core.EdgeBuffer;
+import core.EdgeShuffle;
+import input.EdgeStream;
 import input.Input;
+import input.PreviousPartition;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.Collections;
-import java.util.List;
 import output.Output;
 import output.Statistics;
+import partitioner.BatchScheduler;
+import partitioner.Checkpoint;
+import partitioner.HashedStrategy;
 import partitioner.Partitioner;
+import partitioner.PartitionState;
+import partitioner.VertexLocks;
+import partitioner.coordinated_state.ArrayPartitionState;
 import partitioner.coordinated_state.CoordinatedPartitionState;
+import partitioner.coordinated_state.OffHeapPartitionState;
+import partitioner.strategies.utils.VectorKernel;
 
 public class Main {
     
@@ -47,17 +57,232 @@ public class Main {
         System.out.println(" Parameters:\n");
         GLOBALS.print();
         Statistics stat = new Statistics(GLOBALS);
+        if (GLOBALS.INGEST.equalsIgnoreCase("stream")){
+            System.out.print("\n Streaming graph from file... ");
+            startStreaming(GLOBALS,stat);
+            return;
+        }
+        if (GLOBALS.INGEST.equalsIgnoreCase("external")){
+            System.out.print("\n Streaming graph through external sort and shuffle... ");
+            startStreaming(GLOBALS,stat);
+            return;
+        }
         System.out.print("\n Loading graph into main memory... ");
         Input input = new Input(GLOBALS);
-        List<Edge> x = input.getDataset();
+        EdgeBuffer x = input.getDataset();
         System.out.print("\n Running program... ");
         start(GLOBALS,stat,input,x);
     }
     
-    private static void start(Globals GLOBALS,Statistics stat, Input input, List<Edge> x){
+    private static void start(Globals GLOBALS,Statistics stat, Input input, EdgeBuffer x){
+        long begin_time = System.currentTimeMillis();
+        EdgeBuffer dataset = x;
+        checkCompatibility(GLOBALS);
+        Checkpoint resume = null;
+        if (GLOBALS.RESUME!=null){ resume = readCheckpoint(GLOBALS,dataset); }
+        PreviousPartition previous = null;
+        if (GLOBALS.PREVIOUS!=null){ previous = readPrevious(GLOBALS, resume==null); }
+        shuffle(GLOBALS,dataset);
+        int[] degrees = null;
+        if (GLOBALS.DEGREE.equalsIgnoreCase("exact")){
+            degrees = input.getDegrees();
+            if (degrees==null){
+                System.out.println("\nError: exact degrees need non-negative, dense vertex ids, use -remap true.\n\n");
+                System.exit(-1);
+            }
+        }
+        //deferred dbh counts the partial degrees in an array indexed by vertex id, dense like the array state of createState
+        boolean counters = GLOBALS.EXECUTION.equalsIgnoreCase("deferred") && GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("dbh") && degrees==null;
+        if (counters && (input.getMaxVertexId()<0 || input.getMaxVertexId() >= 2L*input.getEdges() + (1<<20))){
+            System.out.println("\nWarning: the vertex ids are negative or not dense, deferred dbh falls back to the inline execution, which counts the degrees in the records (see -remap).\n");
+            GLOBALS.EXECUTION = "inline";
+            counters = false;
+        }
+        Partitioner p = new Partitioner(dataset,degrees,GLOBALS);
+        if (previous!=null){ restorePreviousHash(GLOBALS,previous,p); }
+        if (counters){ p.setVertices(input.getMaxVertexId()+1); }
+        PartitionState state = createState(GLOBALS,input,previous);
+        if (resume!=null){ resume.restore(state); } //the checkpoint already holds the previous run
+        else if (previous!=null){ restorePrevious(GLOBALS,previous,state); }
+        state  = p.performCoordinatedPartition(state,resume);
+        printResults(GLOBALS,stat,state,p,input.getOriginalIds(),begin_time);
+    }
+    
+    //the resumed run uses the seed of the checkpoint, so that the edges are shuffled in the same order
+    private static Checkpoint readCheckpoint(Globals GLOBALS, EdgeBuffer dataset){
+        Checkpoint resume = null;
+        try {
+            resume = Checkpoint.read(GLOBALS.RESUME);
+            String error = resume.checkCompatibility(GLOBALS, dataset.size());
+            if (error!=null){
+                System.out.println("\nError: cannot resume from "+GLOBALS.RESUME+", "+error+".\n\n");
+                System.exit(-1);
+            }
+            resume.truncateOutput(GLOBALS);
+        } catch (IOException ex) {
+            System.out.println("\nError: cannot resume from "+GLOBALS.RESUME+".\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+        GLOBALS.SEED = resume.getSeed();
+        return resume;
+    }
+    
+    //copy_edges: start the new .edges file with the previous one, not needed when resuming from a checkpoint
+    private static PreviousPartition readPrevious(Globals GLOBALS, boolean copy_edges){
+        PreviousPartition previous = null;
+        try {
+            previous = new PreviousPartition(GLOBALS, GLOBALS.PREVIOUS);
+            if (copy_edges){ previous.copyEdges(); }
+        } catch (IOException ex) {
+            System.out.println("\nError: cannot read the previous partitioning "+GLOBALS.PREVIOUS+".\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+        return previous;
+    }
+    
+    private static void restorePrevious(Globals GLOBALS, PreviousPartition previous, PartitionState state){
+        try {
+            previous.restore(state);
+        } catch (IOException ex) {
+            System.out.println("\nError: cannot read the previous partitioning "+GLOBALS.PREVIOUS+".\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+    
+    //the hashing strategies draw a random hash: the new edges must be hashed like the previous ones
+    private static void restorePreviousHash(Globals GLOBALS, PreviousPartition previous, Partitioner p){
+        HashedStrategy hash = p.getHashedStrategy();
+        if (hash!=null && !previous.restoreHash(hash)){
+            System.out.println("\nWarning: "+GLOBALS.PREVIOUS+".info has no "+GLOBALS.PARTITION_STRATEGY+" hash, the vertices of the previous partitioning may be hashed to other partitions.\n");
+        }
+    }
+    
+    private static void shuffle(Globals GLOBALS, EdgeBuffer dataset){
+        if (GLOBALS.SHUFFLE.equalsIgnoreCase("parallel")){ EdgeShuffle.parallel(dataset, GLOBALS.SEED, GLOBALS.THREADS); }
+        else if (GLOBALS.SHUFFLE.equalsIgnoreCase("sequential")){ EdgeShuffle.sequential(dataset, GLOBALS.SEED); }
+        else if (GLOBALS.SHUFFLE.equalsIgnoreCase("block")){ EdgeShuffle.block(dataset, GLOBALS.SEED, GLOBALS.THREADS); }
+        //"chunks" is applied by the Partitioner, "none" keeps the input order
+    }
+    
+    private static void startStreaming(Globals GLOBALS,Statistics stat){
         long begin_time = System.currentTimeMillis();
-        List<Edge> dataset = x;
-        Collections.shuffle(dataset);
+        checkCompatibility(GLOBALS);
+        EdgeStream stream = new EdgeStream(GLOBALS);
+        Partitioner p = new Partitioner(GLOBALS);
+        PreviousPartition previous = null;
+        if (GLOBALS.PREVIOUS!=null){ previous = readPrevious(GLOBALS, true); } //before the state opens the .edges file
+        if (previous!=null){ restorePreviousHash(GLOBALS,previous,p); }
+        PartitionState state = new CoordinatedPartitionState(GLOBALS);
+        if (previous!=null){ restorePrevious(GLOBALS,previous,state); }
+        state  = p.performStreamingPartition(stream,state);
+        printResults(GLOBALS,stat,state,p,null,begin_time);
+        System.out.println(" Info:\n");
+        System.out.println("\tvertices: "+state.getNumVertices());
+        System.out.println("\tedges: "+stream.getEdges());
+        System.out.println("\n");
+    }
+    
+    //the array state needs every vertex id in 0..max id, "auto" also wants the range to be dense (at most
+    //about two slots per edge) so that the array does not outgrow the map it replaces
+    private static PartitionState createState(Globals GLOBALS, Input input, PreviousPartition previous){
+        int max_id = input.getMaxVertexId();
+        if (previous!=null){ max_id = (max_id<0 || previous.getMaxVertexId()<0) ? -1 : Math.max(max_id, previous.getMaxVertexId()); }
+        boolean known = max_id>=0 && max_id<Integer.MAX_VALUE-8;
+        if (GLOBALS.STATE.equalsIgnoreCase("array") || GLOBALS.STATE.equalsIgnoreCase("offheap")){
+            if (!known){
+                System.out.println("\nError: the "+GLOBALS.STATE+" state needs non-negative vertex ids, see -remap.\n\n");
+                System.exit(-1);
+            }
+        }
+        if (GLOBALS.STATE.equalsIgnoreCase("array")){
+            return new ArrayPartitionState(GLOBALS, max_id+1, input.getOriginalIds());
+        }
+        if (GLOBALS.STATE.equalsIgnoreCase("offheap")){
+            try {
+                return new OffHeapPartitionState(GLOBALS, max_id+1, input.getOriginalIds(), GLOBALS.STATE_FILE);
+            } catch (IOException ex) {
+                System.out.println("\nError: cannot create the offheap state.\n\n");
+                ex.printStackTrace();
+                System.exit(-1);
+            }
+        }
+        if (GLOBALS.STATE.equalsIgnoreCase("auto") && known && max_id < 2L*input.getEdges() + (1<<20)){
+            return new ArrayPartitionState(GLOBALS, max_id+1, input.getOriginalIds());
+        }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("sharded")){
+            System.out.println("\nWarning: the vertex ids are not dense, sharded execution falls back to the map state, whose lookups take the same lock (see -remap).\n");
+        }
+        return new CoordinatedPartitionState(GLOBALS, input.getOriginalIds());
+    }
+    
+    private static void checkCompatibility(Globals GLOBALS){
+        if (GLOBALS.SCORING.equalsIgnoreCase("vector") && VectorKernel.load()==null){
+            System.out.println("\nWarning: -scoring vector needs the classes of src-vector and java --add-modules jdk.incubator.vector, using the scalar scoring.\n");
+            GLOBALS.SCORING = "scalar";
+        }
+        if (GLOBALS.PREVIOUS!=null && GLOBALS.REMAP){
+            System.out.println("\nError: -previous cannot be used with -remap, the previous output holds the original ids.\n\n");
+            System.exit((-1));
+        }
+        if (GLOBALS.PREVIOUS!=null && GLOBALS.DEGREE.equalsIgnoreCase("exact")){
+            System.out.println("\nError: -previous cannot be used with exact degrees, the graphfile holds only the new edges.\n\n");
+            System.exit((-1));
+        }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("deferred")){
+            if (!GLOBALS.INGEST.equalsIgnoreCase("memory")){
+                System.out.println("\nError: deferred execution is available only with memory ingestion.\n\n");
+                System.exit((-1));
+            }
+            if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hdrf") || GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("greedy")){
+                System.out.println("\nError: deferred execution is available only for hashing, dbh, grid and pds, "+GLOBALS.PARTITION_STRATEGY+" reads the replicas.\n\n");
+                System.exit((-1));
+            }
+            if (GLOBALS.CHECKPOINT!=null || GLOBALS.RESUME!=null || GLOBALS.PREVIOUS!=null || GLOBALS.COORDINATION.equalsIgnoreCase("oblivious")){
+                System.out.println("\nError: deferred execution cannot be used with checkpoints, -previous or oblivious coordination.\n\n");
+                System.exit((-1));
+            }
+        }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("optimistic") && !GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hdrf")){
+            System.out.println("\nError: optimistic execution is available only for hdrf.\n\n");
+            System.exit((-1));
+        }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("batch") || GLOBALS.EXECUTION.equalsIgnoreCase("sharded")){
+            if (!GLOBALS.INGEST.equalsIgnoreCase("memory")){
+                System.out.println("\nError: "+GLOBALS.EXECUTION+" execution is available only with memory ingestion.\n\n");
+                System.exit((-1));
+            }
+            if (GLOBALS.CHECKPOINT!=null || GLOBALS.RESUME!=null || GLOBALS.COORDINATION.equalsIgnoreCase("oblivious")){
+                System.out.println("\nError: "+GLOBALS.EXECUTION+" execution cannot be used with checkpoints or oblivious coordination.\n\n");
+                System.exit((-1));
+            }
+        }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("sharded") && GLOBALS.STATE.equalsIgnoreCase("map")){
+            System.out.println("\nError: sharded execution needs the array or offheap state, every getRecord of the map state takes the same lock.\n\n");
+            System.exit((-1));
+        }
+        if ((GLOBALS.CHECKPOINT!=null || GLOBALS.RESUME!=null) && GLOBALS.COORDINATION.equalsIgnoreCase("oblivious")){
+            System.out.println("\nError: checkpoints are available only with coordinated threads, the oblivious ones keep part of the state to themselves.\n\n");
+            System.exit((-1));
+        }
+        if ((GLOBALS.CHECKPOINT!=null || GLOBALS.RESUME!=null) && !GLOBALS.INGEST.equalsIgnoreCase("memory")){
+            System.out.println("\nError: checkpoints are available only with memory ingestion.\n\n");
+            System.exit((-1));
+        }
+        if ((GLOBALS.STATE.equalsIgnoreCase("array") || GLOBALS.STATE.equalsIgnoreCase("offheap")) && !GLOBALS.INGEST.equalsIgnoreCase("memory")){
+            System.out.println("\nError: the "+GLOBALS.STATE+" state is available only with memory ingestion.\n\n");
+            System.exit((-1));
+        }
+        if (GLOBALS.STATE_FILE!=null && !GLOBALS.STATE.equalsIgnoreCase("offheap")){
+            System.out.println("\nError: -state_file backs only the offheap state, use -state offheap.\n\n");
+            System.exit((-1));
+        }
+        if (GLOBALS.DEGREE.equalsIgnoreCase("exact") && !GLOBALS.INGEST.equalsIgnoreCase("memory")){
+            System.out.println("\nError: exact degrees are available only with memory ingestion.\n\n");
+            System.exit((-1));
+        }
         if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("grid") && !Partitioner.is_grid_compatible(GLOBALS.P)){
             System.out.println("\nError: Num partitions "+GLOBALS.P+" cannot be used for grid ingress.\n\n");
             System.exit((-1));
@@ -66,8 +291,10 @@ public class Main {
             System.out.println("\nError: Num partitions "+GLOBALS.P+" cannot be used for pds ingress.\n\n");
             System.exit((-1));
         }
-        Partitioner p = new Partitioner(dataset,GLOBALS);
-        CoordinatedPartitionState state  = p.performCoordinatedPartition();
+    }
+    
+    private static void printResults(Globals GLOBALS,Statistics stat, PartitionState state, Partitioner p, int[] original_ids, long begin_time){
+        VertexLocks locks = p.getLocks();
         int [] load = state.getMachines_load();
         stat.computeReplicationFactor(state);  
         stat.computeStdDevLoad(load);
@@ -86,11 +313,22 @@ public class Main {
         System.out.println("\tLoad relative standard deviation: "+std_dev);
         System.out.println("\tMax partition size (edge cardinality): "+MAX_LOAD_EDGES);
         System.out.println("\tMax partition size (vertex cardinality): "+MAX_LOAD_VERTICES);
+        System.out.println("\tContended vertex locks: "+locks.getContended()+" of "+locks.getAcquisitions()+" (spins: "+locks.getSpins()+", parks: "+locks.getParks()+")");
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("optimistic")){
+            double rate = (locks.getValidations()>0) ? 100.0*locks.getConflicts()/locks.getValidations() : 0;
+            System.out.println("\tOptimistic commits: "+locks.getConflicts()+" conflicts of "+locks.getValidations()+" (conflict rate: "+round(rate, GLOBALS.PLACES)+"%)");
+        }
+        System.out.println("\tThroughput: "+p.getThroughput()+" edges/s");
+        if (GLOBALS.COORDINATION.equalsIgnoreCase("oblivious")){ System.out.println("\tState merges: "+p.getSyncs()); }
+        BatchScheduler batch = p.getBatchScheduler();
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("sharded")){ System.out.println("\tShard messages: "+p.getShardMessages()+" (edges with both endpoints in one shard: "+p.getShardLocalEdges()+")"); }
+        if (batch!=null){ System.out.println("\tBatch windows: "+batch.getWindows()+" (rounds: "+batch.getRounds()+", barriers: "+batch.getBarriers()+", serial edges: "+batch.getSerialEdges()+")"); }
         System.out.println("\n");     
         //WRITE OUTPUT ON FILE
         if (GLOBALS.OUTPUT_FILE_NAME!=null){
-            Output.writeInfo(GLOBALS, RF, std_dev, MAX_LOAD_EDGES, MAX_LOAD_VERTICES);
-            Output.writeVertexReplicas(GLOBALS, state);
+            Output.writeInfo(GLOBALS, p.getHashedStrategy(), RF, std_dev, MAX_LOAD_EDGES, MAX_LOAD_VERTICES);
+            state.closeOutput();
+            Output.writeVertexReplicas(GLOBALS, state, original_ids);
         }
     }
     
@@ -44,11 +44,22 @@ public class Edge implements Comparable,Serializable{
         return v;
     }
 
+    //an edge packed in a long: u in the high word, v in the low word
+    public static long pack(int u, int v) {
+        return ((long) u << 32) | (v & 0xFFFFFFFFL);
+    }
+
+    public static int getU(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int getV(long packed) {
+        return (int) packed;
+    }
+
     @Override
     public int hashCode() {
-        String a = toString();
-        int hash = a.hashCode();
-        return hash;
+        return Long.hashCode(canonical());
     }
 
     @Override
@@ -98,6 +109,11 @@ public class Edge implements Comparable,Serializable{
             System.exit(-1);
         }
         final Edge other = (Edge) obj;
-        return this.toString().compareTo(obj.toString()); //lexicographic order
+        return Long.compare(this.canonical(), other.canonical());
+    }
+    
+    //the edge packed with the smaller endpoint first, equal for (u,v) and (v,u)
+    public long canonical() {
+        return (u<v) ? pack(u,v) : pack(v,u);
     }
 }
@@ -0,0 +1,110 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// EdgeBuffer.java: primitive edge list, one packed long per edge (see Edge.pack), on-heap, off-heap or memory-mapped
+
+package core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.List;
+
+public class EdgeBuffer {
+
+    //edges are stored in chunks of 2^CHUNK_BITS longs (1GB), the largest power of two a single mapping can hold
+    public static final int CHUNK_BITS = 27;
+    public static final int CHUNK_SIZE = 1<<CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE-1;
+
+    private final LongBuffer[] chunks;
+    private final long size;
+
+    private EdgeBuffer(LongBuffer[] chunks, long size){
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    //wraps the first n entries of the array, without copying them
+    public static EdgeBuffer wrap(long[] packed, int n){
+        LongBuffer[] chunks = new LongBuffer[(n+CHUNK_SIZE-1)/CHUNK_SIZE];
+        for (int c = 0; c<chunks.length; c++){
+            int offset = c*CHUNK_SIZE;
+            chunks[c] = LongBuffer.wrap(packed, offset, Math.min(CHUNK_SIZE, n-offset)).slice();
+        }
+        return new EdgeBuffer(chunks, n);
+    }
+
+    //wraps buffers of CHUNK_SIZE edges each (but the last one), e.g. the mappings of a binary edge list
+    public static EdgeBuffer wrap(List<LongBuffer> buffers){
+        LongBuffer[] chunks = new LongBuffer[buffers.size()];
+        long size = 0;
+        for (int c = 0; c<chunks.length; c++){
+            chunks[c] = buffers.get(c);
+            if (c<chunks.length-1 && chunks[c].limit()!=CHUNK_SIZE){
+                throw new IllegalArgumentException("EdgeBuffer.wrap -> chunk "+c+" holds "+chunks[c].limit()+" edges");
+            }
+            size += chunks[c].limit();
+        }
+        return new EdgeBuffer(chunks, size);
+    }
+
+    //copies the first n entries of the array into direct (off-heap) memory
+    public static EdgeBuffer allocateDirect(long[] packed, int n){
+        LongBuffer[] chunks = new LongBuffer[(n+CHUNK_SIZE-1)/CHUNK_SIZE];
+        for (int c = 0; c<chunks.length; c++){
+            int offset = c*CHUNK_SIZE;
+            int length = Math.min(CHUNK_SIZE, n-offset);
+            chunks[c] = ByteBuffer.allocateDirect(8*length).order(ByteOrder.nativeOrder()).asLongBuffer();
+            chunks[c].put(packed, offset, length);
+            chunks[c].clear();
+        }
+        return new EdgeBuffer(chunks, n);
+    }
+
+    public long size(){
+        return size;
+    }
+
+    public long get(long i){
+        return chunks[(int) (i >>> CHUNK_BITS)].get((int) (i & CHUNK_MASK));
+    }
+
+    public int getU(long i){
+        return Edge.getU(get(i));
+    }
+
+    public int getV(long i){
+        return Edge.getV(get(i));
+    }
+
+    public void set(long i, long packed){
+        chunks[(int) (i >>> CHUNK_BITS)].put((int) (i & CHUNK_MASK), packed);
+    }
+
+    public void swap(long i, long j){
+        long x = get(i);
+        set(i, get(j));
+        set(j, x);
+    }
+}
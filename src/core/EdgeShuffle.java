@@ -0,0 +1,161 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// EdgeShuffle.java: in-place, seeded permutations of an EdgeBuffer (sequential, parallel and block-level)
+
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class EdgeShuffle {
+
+    public static final int BLOCK_SIZE = 4096; //edges per block in block-level shuffles
+
+    //Fisher-Yates on the whole buffer, exact uniform permutation on one thread
+    public static void sequential(EdgeBuffer buffer, long seed){
+        SplittableRandom r = new SplittableRandom(seed);
+        for (long i = buffer.size()-1; i>0; i--){
+            buffer.swap(i, r.nextLong(i+1));
+        }
+    }
+
+    //two parallel Fisher-Yates rounds: first each thread shuffles a contiguous chunk, then each thread shuffles
+    //the positions congruent to its id modulo the number of threads, so every edge can reach every position
+    public static void parallel(final EdgeBuffer buffer, long seed, final int threads){
+        final long n = buffer.size();
+        final long chunk = n / threads + 1;
+        SplittableRandom root = new SplittableRandom(seed);
+        final SplittableRandom[] first = split(root, threads);
+        final SplittableRandom[] second = split(root, threads);
+        run(threads, new Task(){
+            @Override
+            public void run(int t){
+                SplittableRandom r = first[t];
+                long begin = Math.min(t*chunk, n);
+                long end = Math.min(begin+chunk, n);
+                for (long i = end-1; i>begin; i--){
+                    buffer.swap(i, begin + r.nextLong(i-begin+1));
+                }
+            }
+        });
+        run(threads, new Task(){
+            @Override
+            public void run(int t){
+                SplittableRandom r = second[t];
+                long count = (n - t + threads - 1) / threads; //positions t, t+threads, t+2*threads, ...
+                for (long k = count-1; k>0; k--){
+                    buffer.swap(t + k*threads, t + r.nextLong(k+1)*threads);
+                }
+            }
+        });
+    }
+
+    //permutes whole blocks of BLOCK_SIZE edges (sequential memory traffic), then shuffles inside each block in parallel
+    public static void block(final EdgeBuffer buffer, long seed, final int threads){
+        final long n = buffer.size();
+        final long blocks = n / BLOCK_SIZE; //the last partial block keeps its place
+        SplittableRandom r = new SplittableRandom(seed);
+        for (long b = blocks-1; b>0; b--){
+            long c = r.nextLong(b+1);
+            if (c!=b){
+                for (long i = 0; i<BLOCK_SIZE; i++){
+                    buffer.swap(b*BLOCK_SIZE+i, c*BLOCK_SIZE+i);
+                }
+            }
+        }
+        final long all_blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final SplittableRandom[] streams = split(r, threads);
+        run(threads, new Task(){
+            @Override
+            public void run(int t){
+                SplittableRandom r = streams[t];
+                for (long b = t; b<all_blocks; b+=threads){
+                    long begin = b*BLOCK_SIZE;
+                    long end = Math.min(begin+BLOCK_SIZE, n);
+                    for (long i = end-1; i>begin; i--){
+                        buffer.swap(i, begin + r.nextLong(i-begin+1));
+                    }
+                }
+            }
+        });
+    }
+
+    //random order of the blocks of the buffer, the edges are not moved (see PartitionerThread)
+    public static int[] blockOrder(EdgeBuffer buffer, long seed){
+        long blocks = (buffer.size() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blocks>Integer.MAX_VALUE){ throw new IllegalArgumentException("EdgeShuffle.blockOrder -> too many blocks: "+blocks); }
+        int[] order = new int[(int) blocks];
+        for (int b = 0; b<order.length; b++){ order[b] = b; }
+        SplittableRandom r = new SplittableRandom(seed);
+        for (int b = order.length-1; b>0; b--){
+            int c = r.nextInt(b+1);
+            int x = order[b]; order[b] = order[c]; order[c] = x;
+        }
+        return order;
+    }
+
+    //one independent generator per thread, split in thread order so that the result depends only on the seed
+    //(seeds that differ by a constant give correlated SplittableRandom streams)
+    private static SplittableRandom[] split(SplittableRandom root, int threads){
+        SplittableRandom[] result = new SplittableRandom[threads];
+        for (int t = 0; t<threads; t++){ result[t] = root.split(); }
+        return result;
+    }
+
+    private interface Task{
+        void run(int t);
+    }
+
+    private static void run(int threads, final Task task){
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t<threads; t++){
+                final int id = t;
+                tasks.add(new Callable<Object>(){
+                    @Override
+                    public Object call(){
+                        task.run(id);
+                        return null;
+                    }
+                });
+            }
+            for (Future<Object> f : executor.invokeAll(tasks)){ f.get(); }
+        } catch (InterruptedException ex) {
+            System.out.println("InterruptedException "+ex);ex.printStackTrace();
+        } catch (ExecutionException ex) {
+            System.out.println("\nError: EdgeShuffle.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// BinaryConverter.java: command that converts a text edge list into the binary format read by Input
+
+package input;
+
+import java.io.IOException;
+import application.Globals;
+
+public class BinaryConverter {
+
+    public static void main(String[] args) {
+        if (args.length<2 || args.length%2!=0){
+            System.out.println("\nUsage:\n java -cp VGP.jar input.BinaryConverter graphfile binaryfile [options]\n");
+            System.out.println("Parameters:");
+            System.out.println(" graphfile: the text file that stores the graph (one edge per line, tab or space separated).");
+            System.out.println(" binaryfile: the file where the binary edge list will be written.");
+            System.out.println("\nOptions:");
+            System.out.println(" -dedup boolean");
+            System.out.println("\t specifies whether duplicated edges are removed before writing (true false). Default true.");
+            System.out.println(" -threads integer");
+            System.out.println("\t specifies the number of threads used to parse the text file. Default all available processors.");
+            System.out.println("\nThe binary file is mapped copy-on-write by VGP, which needs write permission on it: a read-only file is copied to the heap.");
+            System.out.println();
+            System.exit(-1);
+        }
+        //the other options of VGP would change the written edges (-remap, -shuffle) or not load them in memory (-ingest)
+        for (int i = 2; i<args.length; i+=2){
+            if (!args[i].equalsIgnoreCase("-dedup") && !args[i].equalsIgnoreCase("-threads")){
+                System.out.println("\nError: unknown option "+args[i]+", BinaryConverter accepts only -dedup and -threads.\n\n");
+                System.exit(-1);
+            }
+        }
+        //the text file is loaded exactly as VGP would, the number of partitions is irrelevant here
+        String[] vgp_args = new String[args.length];
+        vgp_args[0] = args[0];
+        vgp_args[1] = "1";
+        System.arraycopy(args, 2, vgp_args, 2, args.length-2);
+        Globals GLOBALS = new Globals(vgp_args);
+        System.out.print("\n Loading graph into main memory... ");
+        Input input = new Input(GLOBALS);
+        if (input.getPackedEdges()==null){
+            System.out.println("\nError: "+args[0]+" is already a binary edge list.\n\n");
+            System.exit(-1);
+        }
+        System.out.print("\n Writing "+args[1]+"... ");
+        long begin_time = System.currentTimeMillis();
+        try {
+            BinaryEdgeList.write(args[1], input.getPackedEdges(), (int) input.getEdges(), GLOBALS.DEDUP,
+                    input.getVertices(), input.getMinDegree(), input.getMaxDegree());
+        } catch (IOException ex) {
+            System.out.println("\nError: BinaryConverter.main.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+        long time = (System.currentTimeMillis()-begin_time)/1000; //sec
+        System.out.println((int) time +" seconds\n");
+    }
+}
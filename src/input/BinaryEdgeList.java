@@ -0,0 +1,181 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// BinaryEdgeList.java: compact binary edge list (header followed by packed edges), written by BinaryConverter
+
+package input;
+
+import core.Edge;
+import core.EdgeBuffer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryEdgeList {
+
+    //LAYOUT (little endian)
+    //  int  magic       "VGPB"
+    //  int  version
+    //  int  flags       bit 0: edges are deduplicated
+    //  int  vertices
+    //  long edges
+    //  int  min_degree
+    //  int  max_degree
+    //  int  min_vertex_id
+    //  int  max_vertex_id
+    //  ...  zero padding up to HEADER_SIZE
+    //  long edges[edges]  each edge packed as in Edge.pack
+    public static final int MAGIC = 0x42504756; //"VGPB" read as little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int FLAG_DEDUP = 1;
+    private static final int EDGES_PER_MAPPING = EdgeBuffer.CHUNK_SIZE;
+
+    public int flags;
+    public int vertices;
+    public long edges;
+    public int min_degree;
+    public int max_degree;
+    public int min_vertex_id;
+    public int max_vertex_id;
+    private String file_name;
+    private FileChannel channel;
+
+    private BinaryEdgeList(){}
+
+    public static boolean isBinary(String file_name) throws IOException{
+        FileInputStream fis = new FileInputStream(new File(file_name));
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            fis.getChannel().read(magic, 0);
+            return magic.position()==4 && magic.getInt(0)==MAGIC;
+        } finally {
+            fis.close();
+        }
+    }
+
+    public static BinaryEdgeList open(String file_name) throws IOException{
+        BinaryEdgeList result = new BinaryEdgeList();
+        result.file_name = file_name;
+        result.channel = new FileInputStream(new File(file_name)).getChannel();
+        ByteBuffer header = result.channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt()!=MAGIC){ throw new IOException(file_name+" is not a VGP binary edge list"); }
+        int version = header.getInt();
+        if (version!=VERSION){ throw new IOException(file_name+": unsupported binary edge list version "+version); }
+        result.flags = header.getInt();
+        result.vertices = header.getInt();
+        result.edges = header.getLong();
+        result.min_degree = header.getInt();
+        result.max_degree = header.getInt();
+        result.min_vertex_id = header.getInt();
+        result.max_vertex_id = header.getInt();
+        if (result.channel.size()!=HEADER_SIZE+8*result.edges){ throw new IOException(file_name+": truncated binary edge list"); }
+        return result;
+    }
+
+    public boolean isDeduplicated(){
+        return (flags & FLAG_DEDUP)!=0;
+    }
+
+    //maps the edge section, one read-only view per mapping (each below the 2GB mapping limit)
+    public List<LongBuffer> mapEdges() throws IOException{
+        List<LongBuffer> result = new ArrayList<LongBuffer>();
+        for (long first = 0; first<edges; first += EDGES_PER_MAPPING){
+            long count = Math.min(EDGES_PER_MAPPING, edges-first);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE+8*first, 8*count);
+            result.add(mapped.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+        }
+        return result;
+    }
+
+    //maps the edge section copy-on-write: the edges can be modified (e.g. shuffled) without touching the file
+    //returns null if the file cannot be opened for writing, which private mappings require
+    public EdgeBuffer mapEdgesPrivate() throws IOException{
+        RandomAccessFile file;
+        try {
+            file = new RandomAccessFile(file_name, "rw");
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+        FileChannel rw_channel = file.getChannel();
+        List<LongBuffer> result = new ArrayList<LongBuffer>();
+        for (long first = 0; first<edges; first += EDGES_PER_MAPPING){
+            long count = Math.min(EDGES_PER_MAPPING, edges-first);
+            ByteBuffer mapped = rw_channel.map(FileChannel.MapMode.PRIVATE, HEADER_SIZE+8*first, 8*count);
+            result.add(mapped.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer());
+        }
+        rw_channel.close(); //mappings stay valid
+        file.close();
+        return EdgeBuffer.wrap(result);
+    }
+
+    public void close() throws IOException{
+        channel.close();
+    }
+
+    public static void write(String file_name, long[] packed, int n, boolean dedup, int vertices, int min_degree, int max_degree) throws IOException{
+        int min_id = Integer.MAX_VALUE;
+        int max_id = Integer.MIN_VALUE;
+        for (int i = 0; i<n; i++){
+            int u = Edge.getU(packed[i]);
+            int v = Edge.getV(packed[i]);
+            min_id = Math.min(min_id, Math.min(u,v));
+            max_id = Math.max(max_id, Math.max(u,v));
+        }
+        RandomAccessFile file = new RandomAccessFile(file_name, "rw");
+        file.setLength(0);
+        FileChannel out = file.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1<<20).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(dedup ? FLAG_DEDUP : 0);
+        buffer.putInt(vertices);
+        buffer.putLong(n);
+        buffer.putInt(min_degree);
+        buffer.putInt(max_degree);
+        buffer.putInt(min_id);
+        buffer.putInt(max_id);
+        while (buffer.position()<HEADER_SIZE){ buffer.put((byte) 0); }
+        for (int i = 0; i<n; i++){
+            if (!buffer.hasRemaining()){ flush(buffer, out); }
+            buffer.putLong(packed[i]);
+        }
+        flush(buffer, out);
+        out.close();
+        file.close();
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel out) throws IOException{
+        buffer.flip();
+        while (buffer.hasRemaining()){ out.write(buffer); }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// EdgeListParser.java: allocation-free parser of a memory-mapped edge list (one edge per line, tab or space separated)
+
+package input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class EdgeListParser {
+
+    public static final int MAX_MAPPED_BYTES = 1<<30; //a single mapping is limited to 2GB, keep ranges well below
+
+    private final ByteBuffer buffer;
+    private int u;
+    private int v;
+    private int value; //last integer read by parseInt
+
+    public EdgeListParser(ByteBuffer buffer){
+        this.buffer = buffer;
+    }
+
+    //advances to the next edge of the buffer, returns false at the end of the buffer
+    public boolean next(){
+        ByteBuffer b = buffer;
+        int limit = b.limit();
+        int pos = b.position();
+        while (pos<limit){
+            pos = skipBlanks(b, pos, limit);
+            if (pos>=limit){ break; }
+            byte c = b.get(pos);
+            if (c=='\n' || c=='\r'){ pos++; continue; } //empty line
+            if (c=='#'){ pos = skipLine(b, pos, limit); continue; } //skip comments
+            pos = parseInt(b, pos, limit);
+            u = value;
+            pos = skipBlanks(b, pos, limit);
+            pos = parseInt(b, pos, limit);
+            v = value;
+            pos = skipLine(b, pos, limit); //ignore any further column (e.g. weights)
+            b.position(pos);
+            return true;
+        }
+        b.position(limit);
+        return false;
+    }
+
+    public int getU() {
+        return u;
+    }
+
+    public int getV() {
+        return v;
+    }
+
+    private int parseInt(ByteBuffer b, int pos, int limit){
+        boolean negative = false;
+        if (pos<limit && b.get(pos)=='-'){ negative = true; pos++; }
+        int start = pos;
+        long result = 0;
+        while (pos<limit){
+            int d = b.get(pos) - '0';
+            if (d<0 || d>9){ break; }
+            result = result*10 + d;
+            if (result>Integer.MAX_VALUE+1L){ malformed(b, start); }
+            pos++;
+        }
+        if (pos==start){ malformed(b, start); }
+        if (negative){ result = -result; }
+        if (result>Integer.MAX_VALUE){ malformed(b, start); }
+        value = (int) result;
+        return pos;
+    }
+
+    private static int skipBlanks(ByteBuffer b, int pos, int limit){
+        while (pos<limit){
+            byte c = b.get(pos);
+            if (c!=' ' && c!='\t'){ break; }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipLine(ByteBuffer b, int pos, int limit){
+        while (pos<limit && b.get(pos)!='\n'){ pos++; }
+        return (pos<limit) ? pos+1 : limit;
+    }
+
+    private static void malformed(ByteBuffer b, int pos){
+        int end = Math.min(b.limit(), pos+32);
+        StringBuilder line = new StringBuilder();
+        for (int i = pos; i<end && b.get(i)!='\n'; i++){ line.append((char) b.get(i)); }
+        System.out.println("\nError: EdgeListParser -> malformed line near \""+line+"\".\n\n");
+        System.exit(-1);
+    }
+
+    //maps the file in (at least) the given number of read-only ranges, each starting at the beginning of a line
+    public static List<ByteBuffer> split(FileChannel channel, int pieces) throws IOException{
+        long size = channel.size();
+        pieces = (int) Math.max(pieces, (size+MAX_MAPPED_BYTES-1)/MAX_MAPPED_BYTES);
+        List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+        long start = 0;
+        for (int i = 1; i<=pieces && start<size; i++){
+            long end = (i==pieces) ? size : alignToLine(channel, size*i/pieces);
+            if (end>start){
+                result.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end-start));
+                start = end;
+            }
+        }
+        return result;
+    }
+
+    //returns the first position after the newline that follows pos (or the end of the file)
+    private static long alignToLine(FileChannel channel, long pos) throws IOException{
+        long size = channel.size();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (pos<size){
+            probe.clear();
+            int read = channel.read(probe, pos);
+            if (read<=0){ break; }
+            for (int i = 0; i<read; i++){
+                if (probe.get(i)=='\n'){ return pos+i+1; }
+            }
+            pos += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,142 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// EdgeStream.java: reader thread that streams the graph from file through a bounded queue of edge batches
+
+package input;
+
+import core.Edge;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import application.Globals;
+
+public class EdgeStream implements Runnable{
+
+    //a batch stores its edges as consecutive (u,v) pairs
+    private static final int[] END_OF_STREAM = new int[0];
+
+    private final Globals GLOBALS;
+    private final BlockingQueue<int[]> queue;
+    private volatile long edges;
+    private int[] batch; //batch being filled by the reader thread
+    private int size;
+    private ExternalEdgeSorter sorter; //null unless the edges are sorted and shuffled out of core
+
+    public EdgeStream(Globals G){
+        this.GLOBALS = G;
+        this.queue = new ArrayBlockingQueue<int[]>(Globals.STREAM_QUEUE_BATCHES);
+        edges = 0;
+        batch = new int[2*Globals.STREAM_BATCH_SIZE];
+        size = 0;
+    }
+
+    public void start(){
+        Thread reader = new Thread(this, "EdgeStream");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public void run(){
+        try {
+            if (GLOBALS.INGEST.equalsIgnoreCase("external")){ sorter = new ExternalEdgeSorter(GLOBALS); }
+            if (BinaryEdgeList.isBinary(GLOBALS.INPUT_FILE_NAME)){
+                BinaryEdgeList file = BinaryEdgeList.open(GLOBALS.INPUT_FILE_NAME);
+                for (LongBuffer mapping : file.mapEdges()){
+                    while (mapping.hasRemaining()){
+                        long e = mapping.get();
+                        accept(Edge.getU(e), Edge.getV(e));
+                    }
+                }
+                file.close();
+            }
+            else{
+                FileInputStream fis = new FileInputStream(new File(GLOBALS.INPUT_FILE_NAME));
+                FileChannel channel = fis.getChannel();
+                for (ByteBuffer range : EdgeListParser.split(channel, 1)){
+                    EdgeListParser parser = new EdgeListParser(range);
+                    while (parser.next()){
+                        accept(parser.getU(), parser.getV());
+                    }
+                }
+                channel.close();
+            }
+            if (sorter!=null){
+                sorter.finish(this);
+                sorter = null;
+            }
+            if (size>0){
+                queue.put(Arrays.copyOf(batch, size));
+                edges += size/2;
+            }
+            queue.put(END_OF_STREAM);
+        } catch (IOException ex) {
+            System.out.println("\nError: EdgeStream.run.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        } catch (InterruptedException ex) {
+            System.out.println("\nError: EdgeStream.run interrupted.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+    
+    private void accept(int u, int v) throws IOException, InterruptedException{
+        if (u==v){ return; } //self connection not allowed
+        if (sorter!=null){ sorter.add(u,v); }
+        else { emit(u,v); }
+    }
+    
+    void emit(int u, int v) throws InterruptedException{
+        batch[size++] = u;
+        batch[size++] = v;
+        if (size==batch.length){
+            queue.put(batch);
+            edges += size/2;
+            batch = new int[2*Globals.STREAM_BATCH_SIZE];
+            size = 0;
+        }
+    }
+
+    //blocks until the next batch is available, returns null once the stream is exhausted
+    public int[] take() throws InterruptedException{
+        int[] batch = queue.take();
+        if (batch==END_OF_STREAM){
+            queue.put(END_OF_STREAM); //wake up the other consumers
+            return null;
+        }
+        return batch;
+    }
+
+    //number of edges handed to the partitioner so far (duplicates are not removed)
+    public long getEdges() {
+        return edges;
+    }
+}
@@ -0,0 +1,254 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ExternalEdgeSorter.java: out-of-core deduplication (sorted runs + k-way merge) and shuffle (random buckets) of the edge stream
+
+package input;
+
+import core.Edge;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import application.Globals;
+
+public class ExternalEdgeSorter {
+
+    private static final int IO_BUFFER = 1<<16;
+    private static final int MAX_OPEN_FILES = 256; //runs merged and buckets written at a time
+
+    private final Globals GLOBALS;
+    private final File tmp_dir;
+    private long[] run; //in-memory run, reused to shuffle the buckets
+    private int size;
+    private long added;
+    private final List<File> runs;
+
+    public ExternalEdgeSorter(Globals G){
+        this.GLOBALS = G;
+        this.tmp_dir = new File(GLOBALS.TMP_DIR);
+        this.run = new long[GLOBALS.RUN_SIZE];
+        this.size = 0;
+        this.added = 0;
+        this.runs = new ArrayList<File>();
+    }
+
+    //PHASE 1: fill the run buffer, sort it and spill it to a temporary file when full
+    public void add(int u, int v) throws IOException{
+        if (GLOBALS.DEDUP && u>v){ int x = u; u = v; v = x; } //canonical (min,max) pair
+        run[size++] = Edge.pack(u,v);
+        added++;
+        if (size==run.length){ spill(); }
+    }
+
+    private void spill() throws IOException{
+        if (size==0){ return; }
+        int n = size;
+        if (GLOBALS.DEDUP){
+            Arrays.parallelSort(run, 0, n);
+            n = unique(run, n);
+        }
+        File f = createTempFile("vgp-run");
+        DataOutputStream out = openOutput(f);
+        for (int i = 0; i<n; i++){ out.writeLong(run[i]); }
+        out.close();
+        runs.add(f);
+        size = 0;
+    }
+
+    //PHASE 2 and 3: merge the runs (dropping duplicates) into randomly chosen buckets,
+    //then emit the buckets in random order, each one shuffled in memory
+    public void finish(EdgeStream stream) throws IOException, InterruptedException{
+        Random r = new Random(GLOBALS.SEED);
+        if (runs.isEmpty()){
+            //the whole graph fits in memory, no need to touch the disk
+            int n = size;
+            if (GLOBALS.DEDUP){
+                Arrays.parallelSort(run, 0, n);
+                n = unique(run, n);
+            }
+            emitShuffled(stream, run, n, r);
+            return;
+        }
+        spill();
+        //more runs than MAX_OPEN_FILES are merged in groups, each group into a single run, until they fit in one merge
+        while (runs.size()>MAX_OPEN_FILES){
+            List<File> merged = new ArrayList<File>();
+            for (int i = 0; i<runs.size(); i+=MAX_OPEN_FILES){
+                List<File> group = runs.subList(i, Math.min(i+MAX_OPEN_FILES, runs.size()));
+                if (group.size()==1){ merged.add(group.get(0)); continue; }
+                File f = createTempFile("vgp-run");
+                DataOutputStream[] out = {openOutput(f)};
+                merge(group, out, r);
+                out[0].close();
+                for (File g : group){ g.delete(); }
+                merged.add(f);
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+        File[] buckets = new File[numBuckets(added, 1)];
+        DataOutputStream[] bucket_out = openBuckets(buckets);
+        merge(runs, bucket_out, r);
+        for (DataOutputStream out : bucket_out){ out.close(); }
+        for (File f : runs){ f.delete(); }
+        runs.clear();
+        emitBuckets(stream, buckets, r);
+    }
+
+    //buckets are expected to fill half of the run buffer, at most MAX_OPEN_FILES are written at a time
+    private int numBuckets(long edges, int min){
+        return (int) Math.max(min, Math.min(MAX_OPEN_FILES, (2*edges + run.length - 1)/run.length));
+    }
+
+    private DataOutputStream[] openBuckets(File[] buckets) throws IOException{
+        DataOutputStream[] result = new DataOutputStream[buckets.length];
+        for (int b = 0; b<buckets.length; b++){
+            buckets[b] = createTempFile("vgp-bucket");
+            result[b] = openOutput(buckets[b]);
+        }
+        return result;
+    }
+
+    private void emitBuckets(EdgeStream stream, File[] buckets, Random r) throws IOException, InterruptedException{
+        for (int b = buckets.length-1; b>0; b--){
+            int j = r.nextInt(b+1);
+            File x = buckets[b]; buckets[b] = buckets[j]; buckets[j] = x;
+        }
+        for (File bucket : buckets){ emitBucket(stream, bucket, r); }
+    }
+
+    //a bucket larger than the run buffer (many edges and few buckets) is split again into random buckets
+    private void emitBucket(EdgeStream stream, File bucket, Random r) throws IOException, InterruptedException{
+        long n = bucket.length()/8;
+        DataInputStream in = openInput(bucket);
+        if (n<=run.length){
+            for (int i = 0; i<n; i++){ run[i] = in.readLong(); }
+            in.close();
+            bucket.delete();
+            emitShuffled(stream, run, (int) n, r);
+            return;
+        }
+        File[] buckets = new File[numBuckets(n, 2)];
+        DataOutputStream[] bucket_out = openBuckets(buckets);
+        for (long i = 0; i<n; i++){ bucket_out[r.nextInt(buckets.length)].writeLong(in.readLong()); }
+        in.close();
+        for (DataOutputStream out : bucket_out){ out.close(); }
+        bucket.delete();
+        emitBuckets(stream, buckets, r);
+    }
+
+    //k-way merge of sorted files, each distinct edge is written to a random output
+    private void merge(List<File> inputs, DataOutputStream[] outputs, Random r) throws IOException{
+        PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>();
+        for (File f : inputs){
+            RunReader reader = new RunReader(openInput(f));
+            if (reader.advance()){ heap.add(reader); }
+            else { reader.close(); }
+        }
+        boolean first = true;
+        long last = 0;
+        while (!heap.isEmpty()){
+            RunReader reader = heap.poll();
+            long e = reader.head;
+            if (!GLOBALS.DEDUP || first || e!=last){
+                outputs[(outputs.length==1) ? 0 : r.nextInt(outputs.length)].writeLong(e);
+                last = e;
+                first = false;
+            }
+            if (reader.advance()){ heap.add(reader); }
+            else { reader.close(); }
+        }
+    }
+
+    private static void emitShuffled(EdgeStream stream, long[] edges, int n, Random r) throws InterruptedException{
+        for (int i = n-1; i>0; i--){
+            int j = r.nextInt(i+1);
+            long x = edges[i]; edges[i] = edges[j]; edges[j] = x;
+        }
+        for (int i = 0; i<n; i++){
+            stream.emit(Edge.getU(edges[i]), Edge.getV(edges[i]));
+        }
+    }
+
+    //removes consecutive duplicates in place, returns the number of distinct values
+    private static int unique(long[] sorted, int n){
+        if (n==0){ return 0; }
+        int size = 1;
+        for (int i = 1; i<n; i++){
+            if (sorted[i]!=sorted[size-1]){ sorted[size++] = sorted[i]; }
+        }
+        return size;
+    }
+
+    private File createTempFile(String prefix) throws IOException{
+        File f = File.createTempFile(prefix, ".bin", tmp_dir);
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static DataOutputStream openOutput(File f) throws IOException{
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), IO_BUFFER));
+    }
+
+    private static DataInputStream openInput(File f) throws IOException{
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f), IO_BUFFER));
+    }
+
+    private static class RunReader implements Comparable<RunReader>{
+        private final DataInputStream in;
+        long head;
+
+        RunReader(DataInputStream in){
+            this.in = in;
+        }
+
+        boolean advance() throws IOException{
+            try {
+                head = in.readLong();
+                return true;
+            } catch (EOFException ex) {
+                return false;
+            }
+        }
+
+        void close() throws IOException{
+            in.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other){
+            return Long.compare(head, other.head);
+        }
+    }
+}
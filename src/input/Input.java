@@ -26,78 +26,58 @@
 package input;
 
 import core.Edge;
-import java.io.BufferedReader;
+import core.EdgeBuffer;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
 import application.Globals;
 
 public class Input {
     
     private final Globals GLOBALS;
-    private List<Edge> dataset;
+    private EdgeBuffer dataset;
+    private long[] packed; //edges packed as in Edge.pack, until getDataset is called
     private int vertices;
     private long edges;
+    private int min_degree;
+    private int max_degree;
+    private int[] degree; //degree of each vertex indexed by its id, null until built
+    private int[] original_ids; //original id of each remapped vertex, null if the ids are not remapped
+    private int max_vertex_id; //largest vertex id if all the ids are non-negative, -1 if unknown
     
     public Input(Globals G){
         this.GLOBALS = G;   
         edges = 0;
         vertices = 0;
+        max_vertex_id = -1;
         readDatasetFromFile();
     }
     
     private void readDatasetFromFile(){        
         long begin_time = System.currentTimeMillis();
-        TreeSet<Integer> vertices_tree= new TreeSet<Integer>();
-        TreeSet<Edge> edges_tree = new TreeSet<Edge>();
-        HashMap<Integer,Integer> degree = new HashMap<Integer,Integer>();
+        boolean binary = false;
         try {
-            FileInputStream fis = new FileInputStream(new File(GLOBALS.INPUT_FILE_NAME));
-            InputStreamReader isr = new InputStreamReader(fis);
-            BufferedReader in = new BufferedReader(isr);
-            String line;
-            while((line = in.readLine())!=null){
-                if (line.startsWith("#")){continue;} //skip comments
-                String values[] = line.split("\t");
-                int u = Integer.parseInt(values[0]);
-                int v = Integer.parseInt(values[1]);
-                if (u!=v){  //self connection not allowed
-                    Edge t = new Edge(u,v);
-                    if ( edges_tree.add(t) ){ edges++; }
-                    //System.out.println(t);
-
-                    if( vertices_tree.add(u)){ vertices++; }
-                    if( vertices_tree.add(v) ){ vertices++; }
-                    
-                    //DEGREE STATISTICS
-                    if (!degree.containsKey(u)){ degree.put(u, 0);}
-                    if (!degree.containsKey(v)){ degree.put(v, 0);}                 
-                    int old_degree_u  = degree.get(u);
-                    int old_degree_v  = degree.get(v);
-                    degree.put(u, old_degree_u+1);
-                    degree.put(v, old_degree_v+1);
-                }
-            }         
-            in.close();
+            binary = BinaryEdgeList.isBinary(GLOBALS.INPUT_FILE_NAME);
         } catch (IOException ex) {
             System.out.println("\nError: Input.readDatasetFromFile.\n\n");
             ex.printStackTrace();
             System.exit(-1);
-        }          
-        
-        //DEBUG
-        int MIN_DEGREE = Integer.MAX_VALUE;
-        int MAX_DEGREE = Integer.MIN_VALUE;
-        for (int v : degree.keySet()){
-            int d = degree.get(v);
-            if (d>MAX_DEGREE){ MAX_DEGREE = d; }
-            if (d<MIN_DEGREE){ MIN_DEGREE = d; }
         }
+        if (binary){ readBinaryFile(); }
+        else { readTextFile(); }
         long end_time = System.currentTimeMillis();
         long time = end_time-begin_time;
         time /= 1000; //sec
@@ -105,18 +85,301 @@ public class Input {
         System.out.println("\n Info:\n");
         System.out.println("\tvertices: "+vertices);
         System.out.println("\tedges: "+edges);
-        System.out.println("\tmin-degree: "+MIN_DEGREE);
-        System.out.println("\tmax-degree: "+MAX_DEGREE);
-        
-        dataset = new ArrayList<Edge>(edges_tree);
-        vertices_tree.clear();
-        edges_tree.clear();
-        degree.clear();
+        System.out.println("\tmin-degree: "+min_degree);
+        System.out.println("\tmax-degree: "+max_degree);
+    }
+    
+    private void readTextFile(){
+        packed = collectEdges(parseFile());
+        if (GLOBALS.DEDUP){
+            edges = deduplicate(packed, (int) edges);
+        }
+        if (GLOBALS.REMAP){ remapVertexIds(); }
+        computeDegreeStatistics();
+    }
+    
+    //the binary format needs no parsing: the edge section is used in place through a copy-on-write mapping
+    //when possible, otherwise it is copied as it is
+    private void readBinaryFile(){
+        try {
+            BinaryEdgeList file = BinaryEdgeList.open(GLOBALS.INPUT_FILE_NAME);
+            boolean dedup = GLOBALS.DEDUP && !file.isDeduplicated();
+            if (!dedup){
+                dataset = file.mapEdgesPrivate();
+                if (dataset==null){ System.out.println("\nWarning: "+GLOBALS.INPUT_FILE_NAME+" is not writable, its edges are copied to the heap instead of being mapped copy-on-write.\n"); }
+            }
+            if (dataset!=null){
+                file.close();
+                edges = file.edges;
+                if (GLOBALS.REMAP){ remapVertexIds(); }
+                vertices = file.vertices;
+                min_degree = file.min_degree;
+                max_degree = file.max_degree;
+                if (!GLOBALS.REMAP && file.edges>0 && file.min_vertex_id>=0){ max_vertex_id = file.max_vertex_id; }
+                return;
+            }
+            if (file.edges>Integer.MAX_VALUE-8){
+                System.out.println("\nError: Input.readDatasetFromFile -> too many edges ("+file.edges+") for in-memory ingestion.\n\n");
+                System.exit(-1);
+            }
+            packed = new long[(int) file.edges];
+            int offset = 0;
+            for (LongBuffer mapping : file.mapEdges()){
+                int count = mapping.remaining();
+                mapping.get(packed, offset, count);
+                offset += count;
+            }
+            file.close();
+            edges = file.edges;
+            if (dedup){
+                edges = deduplicate(packed, (int) edges);
+                if (GLOBALS.REMAP){ remapVertexIds(); }
+                computeDegreeStatistics();
+            }
+            else{
+                if (GLOBALS.REMAP){ remapVertexIds(); }
+                vertices = file.vertices;
+                min_degree = file.min_degree;
+                max_degree = file.max_degree;
+                if (!GLOBALS.REMAP && file.edges>0 && file.min_vertex_id>=0){ max_vertex_id = file.max_vertex_id; }
+            }
+        } catch (IOException ex) {
+            System.out.println("\nError: Input.readDatasetFromFile.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        }
+    }
+    
+    //canonical (min,max) pairs are equal for duplicated edges: sort them and keep one per run
+    //the distinct edges are compacted at the beginning of the array, returns their number
+    private static int deduplicate(long[] packed, int n){
+        for (int i = 0; i<n; i++){
+            int u = Edge.getU(packed[i]);
+            int v = Edge.getV(packed[i]);
+            if (u>v){ packed[i] = Edge.pack(v,u); }
+        }
+        Arrays.parallelSort(packed, 0, n);
+        return unique(packed, n);
+    }
+    
+    private void computeDegreeStatistics(){
+        if (buildDegreeTable()){
+            //DEGREE STATISTICS
+            int MIN_DEGREE = Integer.MAX_VALUE;
+            int MAX_DEGREE = Integer.MIN_VALUE;
+            for (int d : degree){
+                if (d==0){ continue; } //not a vertex of the graph
+                if (d>MAX_DEGREE){ MAX_DEGREE = d; }
+                if (d<MIN_DEGREE){ MIN_DEGREE = d; }
+                vertices++;
+            }
+            min_degree = MIN_DEGREE;
+            max_degree = MAX_DEGREE;
+            return;
+        }
+        //the ids cannot index a table: count the runs of the sorted endpoints
+        int n = (int) edges;
+        int[] endpoints = new int[2*n];
+        for (int i = 0; i<n; i++){
+            endpoints[2*i] = Edge.getU(packed[i]);
+            endpoints[2*i+1] = Edge.getV(packed[i]);
+        }
+        Arrays.parallelSort(endpoints);
+        int MIN_DEGREE = Integer.MAX_VALUE;
+        int MAX_DEGREE = Integer.MIN_VALUE;
+        for (int i = 0; i<endpoints.length; ){
+            int j = i;
+            while (j<endpoints.length && endpoints[j]==endpoints[i]){ j++; }
+            int d = j-i;
+            if (d>MAX_DEGREE){ MAX_DEGREE = d; }
+            if (d<MIN_DEGREE){ MIN_DEGREE = d; }
+            vertices++;
+            i = j;
+        }
+        endpoints = null;
+        min_degree = MIN_DEGREE;
+        max_degree = MAX_DEGREE;
+    }
+    
+    //replaces the vertex ids with dense ids 0..vertices-1, assigned in the order of the original ids,
+    //so that per-vertex state can be kept in plain arrays; the original ids are kept for the output
+    private void remapVertexIds(){
+        if (2*edges>Integer.MAX_VALUE-8){
+            System.out.println("\nError: Input.remapVertexIds -> too many edges ("+edges+") to remap the vertex ids.\n\n");
+            System.exit(-1);
+        }
+        int[] ids = new int[(int) (2*edges)];
+        for (long i = 0; i<edges; i++){
+            long e = (packed!=null) ? packed[(int) i] : dataset.get(i);
+            ids[(int) (2*i)] = Edge.getU(e);
+            ids[(int) (2*i+1)] = Edge.getV(e);
+        }
+        Arrays.parallelSort(ids);
+        int n = 0;
+        for (int i = 0; i<ids.length; i++){
+            if (n==0 || ids[i]!=ids[n-1]){ ids[n++] = ids[i]; }
+        }
+        final int[] sorted_ids = Arrays.copyOf(ids, n);
+        ids = null;
+        LongStream.range(0, edges).parallel().forEach(new LongConsumer(){
+            @Override
+            public void accept(long i){
+                long e = (packed!=null) ? packed[(int) i] : dataset.get(i);
+                long remapped = Edge.pack(Arrays.binarySearch(sorted_ids, Edge.getU(e)), Arrays.binarySearch(sorted_ids, Edge.getV(e)));
+                if (packed!=null){ packed[(int) i] = remapped; }
+                else { dataset.set(i, remapped); }
+            }
+        });
+        original_ids = sorted_ids;
+        max_vertex_id = n-1;
+        degree = null;
+    }
+    
+    //counts the degree of every vertex in a dense int[] indexed by vertex id
+    //returns false if the ids are negative, or too sparse for a table (the table is sized by the largest id)
+    private boolean buildDegreeTable(){
+        if (degree!=null){ return true; }
+        int min_id = Integer.MAX_VALUE;
+        int max_id = -1;
+        for (long i = 0; i<edges; i++){
+            long e = (packed!=null) ? packed[(int) i] : dataset.get(i);
+            min_id = Math.min(min_id, Math.min(Edge.getU(e), Edge.getV(e)));
+            max_id = Math.max(max_id, Math.max(Edge.getU(e), Edge.getV(e)));
+        }
+        if (min_id<0 || max_id==Integer.MAX_VALUE){ return false; }
+        max_vertex_id = max_id;
+        if (max_id >= 2L*edges + (1<<20)){ return false; }
+        degree = new int[max_id+1];
+        for (long i = 0; i<edges; i++){
+            long e = (packed!=null) ? packed[(int) i] : dataset.get(i);
+            degree[Edge.getU(e)]++;
+            degree[Edge.getV(e)]++;
+        }
+        return true;
     }
     
-    public List<Edge> getDataset(){
+    //concatenates the parsed ranges dropping self connections, each range is released once copied
+    //the number of edges collected is stored in edges
+    private long[] collectEdges(List<long[]> parsed){
+        long total = 0;
+        for (long[] range : parsed){ total += range.length; }
+        if (total>Integer.MAX_VALUE-8){
+            System.out.println("\nError: Input.readDatasetFromFile -> too many edges ("+total+") for in-memory ingestion.\n\n");
+            System.exit(-1);
+        }
+        long[] result = new long[(int) total];
+        int size = 0;
+        for (int r = 0; r<parsed.size(); r++){
+            for (long e : parsed.get(r)){
+                int u = Edge.getU(e);
+                int v = Edge.getV(e);
+                if (u==v){ continue; } //self connection not allowed
+                result[size++] = e;
+            }
+            parsed.set(r, null);
+        }
+        edges = size;
+        return result;
+    }
+    
+    //removes consecutive duplicates in place, returns the number of distinct values
+    private static int unique(long[] sorted, int n){
+        if (n==0){ return 0; }
+        int size = 1;
+        for (int i = 1; i<n; i++){
+            if (sorted[i]!=sorted[size-1]){ sorted[size++] = sorted[i]; }
+        }
+        return size;
+    }
+    
+    //parses the file on all threads, one newline-aligned mapped range per task, edges packed as in Edge.pack
+    private List<long[]> parseFile(){
+        List<long[]> result = new ArrayList<long[]>();
+        ExecutorService executor = Executors.newFixedThreadPool(GLOBALS.THREADS);
+        try {
+            FileInputStream fis = new FileInputStream(new File(GLOBALS.INPUT_FILE_NAME));
+            FileChannel channel = fis.getChannel();
+            List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+            for (final ByteBuffer range : EdgeListParser.split(channel, 4*GLOBALS.THREADS)){
+                tasks.add(new Callable<long[]>(){
+                    @Override
+                    public long[] call(){
+                        return parseRange(range);
+                    }
+                });
+            }
+            for (Future<long[]> f : executor.invokeAll(tasks)){
+                result.add(f.get());
+            }
+            channel.close();
+        } catch (IOException ex) {
+            System.out.println("\nError: Input.readDatasetFromFile.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        } catch (InterruptedException ex) {
+            System.out.println("\nError: Input.readDatasetFromFile interrupted.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        } catch (ExecutionException ex) {
+            System.out.println("\nError: Input.readDatasetFromFile.\n\n");
+            ex.printStackTrace();
+            System.exit(-1);
+        } finally {
+            executor.shutdown();
+        }
+        return result;
+    }
+    
+    private static long[] parseRange(ByteBuffer range){
+        //a text line takes at least 4 bytes ("u v\n"), start from a reasonable estimate
+        long[] result = new long[Math.max(16, range.remaining()/16)];
+        int size = 0;
+        EdgeListParser parser = new EdgeListParser(range);
+        while (parser.next()){
+            if (size==result.length){ result = Arrays.copyOf(result, 2*size); }
+            result[size++] = Edge.pack(parser.getU(), parser.getV());
+        }
+        return Arrays.copyOf(result, size);
+    }
+    
+    public EdgeBuffer getDataset(){
+        if (dataset==null){
+            if (GLOBALS.OFFHEAP){ dataset = EdgeBuffer.allocateDirect(packed, (int) edges); }
+            else { dataset = EdgeBuffer.wrap(packed, (int) edges); }
+            packed = null;
+        }
         return dataset;
     }
+    
+    //edges packed as in Edge.pack (the first getEdges() entries), available until getDataset is called
+    //null if the input is a binary edge list mapped in place
+    public long[] getPackedEdges(){
+        return packed;
+    }
+
+    //original id of each vertex, indexed by the dense id used in the dataset; null if the ids are not remapped
+    public int[] getOriginalIds(){
+        return original_ids;
+    }
+    
+    //largest vertex id, -1 if unknown or if some ids are negative
+    public int getMaxVertexId(){
+        return max_vertex_id;
+    }
+    
+    //full degree of each vertex indexed by its id, null if the vertex ids are negative or too sparse
+    public int[] getDegrees(){
+        if (!buildDegreeTable()){ return null; }
+        return degree;
+    }
+
+    public int getMinDegree() {
+        return min_degree;
+    }
+
+    public int getMaxDegree() {
+        return max_degree;
+    }
 
     public int getVertices() {
         return vertices;
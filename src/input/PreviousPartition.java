@@ -0,0 +1,221 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// PreviousPartition.java: loads the output of a previous run (prefix.vertices, prefix.edges and the hash of prefix.info) into a partition state
+
+package input;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import partitioner.HashedStrategy;
+import partitioner.PartitionState;
+import partitioner.Record;
+import application.Globals;
+
+public class PreviousPartition {
+
+    private static final int IO_BUFFER = 1<<16;
+
+    private final Globals GLOBALS;
+    private final String prefix;
+    private int max_vertex_id; //-1 if some id is negative
+    private int vertices;
+    private long edges;
+    private String algorithm; //of prefix.info, null if missing
+    private boolean has_hash;
+    private double hash_seed;
+    private int hash_shrink;
+
+    //scans the vertex ids of prefix.vertices, so that the partition state can be sized before restore
+    public PreviousPartition(Globals G, String prefix) throws IOException{
+        this.GLOBALS = G;
+        this.prefix = prefix;
+        boolean negative = false;
+        max_vertex_id = -1;
+        vertices = 0;
+        edges = 0;
+        Tokenizer in = new Tokenizer(prefix+".vertices");
+        try {
+            while (in.next()){
+                int x = in.value;
+                if (x<0){ negative = true; }
+                max_vertex_id = Math.max(max_vertex_id, x);
+                vertices++;
+                while (!in.end_of_line && in.next()){} //replicas
+            }
+        } finally {
+            in.close();
+        }
+        if (negative){ max_vertex_id = -1; }
+        readInfo();
+    }
+
+    //the algorithm and hash lines written by Output.writeInfo, the older .info files have no hash
+    private void readInfo() throws IOException{
+        File file = new File(prefix+".info");
+        if (!file.exists()){ return; }
+        boolean seed = false;
+        boolean shrink = false;
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine())!=null){
+                try {
+                    if (line.startsWith("algorithm: ")){ algorithm = line.substring(11).split(" ")[0].trim(); }
+                    else if (line.startsWith("hash seed: ")){ hash_seed = Double.parseDouble(line.substring(11).trim()); seed = true; }
+                    else if (line.startsWith("hash shrink: ")){ hash_shrink = Integer.parseInt(line.substring(13).trim()); shrink = true; }
+                } catch (NumberFormatException ex){
+                    throw new IOException("malformed line in "+prefix+".info: "+line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        has_hash = seed && shrink;
+    }
+
+    //gives the strategy the hash of the previous run, false if prefix.info has none for the same algorithm
+    public boolean restoreHash(HashedStrategy hash){
+        if (!has_hash || algorithm==null || !algorithm.equalsIgnoreCase(GLOBALS.PARTITION_STRATEGY)){ return false; }
+        hash.setHashParameters(hash_seed, hash_shrink);
+        return true;
+    }
+
+    //replicas from prefix.vertices, degrees and edge loads from prefix.edges
+    //the strategies go on from the restored state as if the previous edges had just been partitioned
+    public void restore(PartitionState state) throws IOException{
+        int[] load_edges = new int[GLOBALS.P];
+        int[] load_vertices = new int[GLOBALS.P];
+        Tokenizer in = new Tokenizer(prefix+".vertices");
+        try {
+            while (in.next()){
+                Record record = state.getRecord(in.value);
+                while (!in.end_of_line && in.next()){
+                    int m = checkPartition(in.value);
+                    record.addPartition(m);
+                    load_vertices[m]++;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        in = new Tokenizer(prefix+".edges");
+        try {
+            while (in.next()){
+                int u = in.value;
+                if (!in.next()){ break; }
+                int v = in.value;
+                if (!in.next()){ break; }
+                int m = checkPartition(in.value);
+                state.getRecord(u).incrementDegree();
+                state.getRecord(v).incrementDegree();
+                load_edges[m]++;
+                edges++;
+            }
+        } finally {
+            in.close();
+        }
+        state.restoreMachineLoads(load_edges, load_vertices);
+    }
+
+    private int checkPartition(int m) throws IOException{
+        if (m<0 || m>=GLOBALS.P){ throw new IOException("the previous partitioning uses partition "+m+", nparts is "+GLOBALS.P); }
+        return m;
+    }
+
+    //the new .edges file starts with the previous assignments, the new ones are appended by the state
+    public void copyEdges() throws IOException{
+        if (GLOBALS.OUTPUT_FILE_NAME==null){ return; }
+        File from = new File(prefix+".edges");
+        File to = new File(GLOBALS.OUTPUT_FILE_NAME+".edges");
+        if (from.getCanonicalPath().equals(to.getCanonicalPath())){ return; }
+        Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int getMaxVertexId(){
+        return max_vertex_id;
+    }
+
+    public int getVertices(){
+        return vertices;
+    }
+
+    //edges read by restore
+    public long getEdges(){
+        return edges;
+    }
+
+    //reads the integers of a file (any other character is a separator) and reports the line ends
+    private static class Tokenizer{
+        private final InputStream in;
+        private final byte[] buffer;
+        private int position;
+        private int length;
+        int value;
+        boolean end_of_line; //the last value read ends its line
+
+        Tokenizer(String file_name) throws IOException{
+            in = new FileInputStream(file_name);
+            buffer = new byte[IO_BUFFER];
+            position = 0;
+            length = 0;
+        }
+
+        private int read() throws IOException{
+            if (position==length){
+                length = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (length<=0){ length = 0; return -1; }
+            }
+            return buffer[position++];
+        }
+
+        boolean next() throws IOException{
+            int c = read();
+            while (c!=-1 && c!='-' && (c<'0' || c>'9')){ c = read(); }
+            if (c==-1){ return false; }
+            boolean negative = (c=='-');
+            if (negative){ c = read(); }
+            int result = 0;
+            while (c>='0' && c<='9'){
+                result = 10*result + (c-'0');
+                c = read();
+            }
+            while (c==' ' || c=='\t' || c=='\r' || c==':' || c==','){ c = read(); }
+            end_of_line = (c=='\n' || c==-1);
+            if (!end_of_line){ position--; } //c starts the next value
+            value = negative ? -result : result;
+            return true;
+        }
+
+        void close() throws IOException{
+            in.close();
+        }
+    }
+}
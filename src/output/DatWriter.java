@@ -32,10 +32,17 @@ import java.io.FileWriter;
 public class DatWriter {
     
     private String FILE_NAME;
+    private boolean APPEND;
     private BufferedWriter bw;
     
     public DatWriter (String f){
+        this(f, false);
+    }
+    
+    //append: keep the content of an existing file and write after it
+    public DatWriter (String f, boolean append){
         FILE_NAME = f;
+        APPEND = append;
         open();
     }
     
@@ -46,7 +53,7 @@ public class DatWriter {
             if (!file.exists()) {
                 file.createNewFile();
             }
-            FileWriter fw = new FileWriter(file.getAbsoluteFile());
+            FileWriter fw = new FileWriter(file.getAbsoluteFile(), APPEND);
             bw = new BufferedWriter(fw);
         }catch(Exception e){
             System.out.println("ERRORE DatWriter.open() "+FILE_NAME);
@@ -66,6 +73,17 @@ public class DatWriter {
         }
     }
     
+    public void flush(){
+        try{
+            bw.flush();
+        }
+        catch(Exception e){
+            System.out.println("ERRORE DatWriter.flush() "+FILE_NAME);
+            e.printStackTrace();
+            System.exit(-1);
+        }
+    }
+    
     public void close(){
        try{
             bw.close();
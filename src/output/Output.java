@@ -26,20 +26,25 @@
 package output;
 
 import application.Globals;
-import java.util.Iterator;
-import java.util.SortedSet;
+import partitioner.HashedStrategy;
 import partitioner.PartitionState;
 import partitioner.Record;
+import partitioner.VertexVisitor;
 
 public class Output {
     
-    public static void writeInfo(Globals GLOBALS, double RF, double std_dev, int MAX_LOAD_EDGES, int MAX_LOAD_VERTICES){
+    //hash: the strategy if it hashes the vertices, null otherwise; its parameters let -previous extend the partitioning
+    public static void writeInfo(Globals GLOBALS, HashedStrategy hash, double RF, double std_dev, int MAX_LOAD_EDGES, int MAX_LOAD_VERTICES){
         DatWriter out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".info");
         out.write("graphfile: "+GLOBALS.INPUT_FILE_NAME+"\n");
         out.write("parts: "+GLOBALS.P+"\n");
         out.write("algorithm: "+GLOBALS.PARTITION_STRATEGY);
         if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hdrf")){ out.write(" (lambda: "+GLOBALS.LAMBDA+")\n"); }
         else out.write("\n");
+        if (hash!=null){
+            out.write("hash seed: "+hash.getHashSeed()+"\n");
+            out.write("hash shrink: "+hash.getHashShrink()+"\n");
+        }
         out.write("\n");
         out.write("Replication factor: "+RF+"\n");
         out.write("Load relative standard deviation: "+std_dev+"\n");
@@ -48,19 +53,26 @@ public class Output {
         out.close();        
     }
     
-    public static void writeVertexReplicas(Globals GLOBALS, PartitionState state){
-        DatWriter out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".vertices");
-        SortedSet<Integer> vertex_ids = state.getVertexIds();
-        for (int x : vertex_ids){
-            out.write(x+":");
-            Record record = state.getRecord(x);
-            Iterator<Byte> partitions =  record.getPartitions();
-            while (partitions.hasNext()){
-                int y = (( partitions.next()  & 0xFF ));                
-                out.write(" "+y);
+    //original_ids: original id of each vertex if the ids were remapped, null otherwise
+    public static void writeVertexReplicas(Globals GLOBALS, PartitionState state, final int[] original_ids){
+        final DatWriter out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".vertices");
+        final long[] words = new long[(GLOBALS.P+63)/64];
+        state.forEachVertex(new VertexVisitor(){
+            @Override
+            public void visit(int x, Record record){
+                StringBuilder line = new StringBuilder();
+                line.append((original_ids!=null) ? original_ids[x] : x).append(':');
+                record.getPartitionWords(words);
+                for (int w = 0; w<words.length; w++){
+                    long bits = words[w];
+                    while (bits!=0){
+                        line.append(' ').append(64*w + Long.numberOfTrailingZeros(bits));
+                        bits &= bits-1;
+                    }
+                }
+                out.write(line.append('\n').toString());
             }
-            out.write("\n");
-        }
+        });
         out.close();
     }
 }
@@ -0,0 +1,221 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// BatchScheduler.java: cuts the edges into windows and each window into rounds of edges with no common vertex, run by the threads without vertex locks
+
+package partitioner;
+
+import core.Edge;
+import core.EdgeBuffer;
+import core.EdgeShuffle;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+public class BatchScheduler implements Runnable{
+
+    //rounds with fewer edges per thread are not worth a barrier: consecutive small rounds form a single step,
+    //run in round order by thread 0 while the others wait
+    public static final int MIN_EDGES_PER_THREAD = 64;
+
+    private final EdgeBuffer dataset;
+    private final int[] block_order; //if not null, blocks of EdgeShuffle.BLOCK_SIZE edges are taken in this order
+    private final PartitionState state;
+    private final PartitionStrategy algorithm;
+    private final int threads;
+    private final CyclicBarrier barrier; //every trip runs this.run(), which moves all the threads to the next step
+
+    //CURSOR ON THE EDGES
+    private int next_block;
+    private long next; //next edge of the current range
+    private long limit; //end of the current range (excluded)
+
+    //CURRENT WINDOW
+    private final long[] positions; //dataset position of each edge of the window, in stream order
+    private final int[] edge_round;
+    private final int[] order; //edges of the window (indices of positions) grouped by round
+    private final int[] round_start; //first entry of order of each round, and of each step once the rounds are merged
+    private final boolean[] serial; //the step is a run of small rounds, see MIN_EDGES_PER_THREAD
+    private int steps;
+    private int step;
+    private volatile boolean done;
+
+    //LAST ROUND OF EACH VERTEX IN THE WINDOW (open addressing, an entry is valid only if its stamp is the window's)
+    private final int[] keys;
+    private final int[] rounds; //last round of the vertex + 1
+    private final int[] stamps;
+    private final int mask;
+    private int stamp;
+
+    private long windows;
+    private long total_rounds;
+    private long barriers;
+    private long serial_edges; //edges of the steps run by thread 0 alone
+
+    public BatchScheduler(EdgeBuffer dataset, int[] block_order, PartitionState state, PartitionStrategy algorithm, int threads, int window){
+        this.dataset = dataset;
+        this.block_order = block_order;
+        this.state = state;
+        this.algorithm = algorithm;
+        this.threads = threads;
+        this.barrier = new CyclicBarrier(threads, this);
+        next_block = 0;
+        next = 0;
+        limit = (block_order==null) ? dataset.size() : 0;
+        positions = new long[window];
+        edge_round = new int[window];
+        order = new int[window];
+        round_start = new int[window+1];
+        serial = new boolean[window];
+        int capacity = Integer.highestOneBit(Math.max(2, 4*window-1)) << 1; //at most half full
+        keys = new int[capacity];
+        rounds = new int[capacity];
+        stamps = new int[capacity];
+        mask = capacity-1;
+        stamp = 0;
+        steps = 0;
+        step = 0;
+    }
+
+    //the partitioner thread t
+    public Runnable worker(final int t){
+        return new Runnable(){
+            @Override
+            public void run(){
+                try {
+                    while (true){
+                        barrier.await();
+                        if (done){ return; }
+                        int from = round_start[step];
+                        int to = round_start[step+1];
+                        if (serial[step]){
+                            if (t==0){ process(from, to); }
+                        }
+                        else{
+                            long size = to-from;
+                            process(from + (int) (size*t/threads), from + (int) (size*(t+1)/threads));
+                        }
+                    }
+                } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();
+                } catch (BrokenBarrierException ex) {System.out.println("BrokenBarrierException "+ex);ex.printStackTrace();}
+            }
+        };
+    }
+
+    private void process(int from, int to){
+        for (int k = from; k<to; k++){
+            long e = dataset.get(positions[order[k]]);
+            algorithm.performStep(Edge.getU(e), Edge.getV(e), state);
+        }
+    }
+
+    //barrier action, run by the last thread to arrive while the others wait: the barrier also publishes the
+    //records written in a step to the threads of the next one
+    @Override
+    public void run(){
+        barriers++;
+        step++;
+        if (step<steps){ return; }
+        step = 0;
+        if (!nextWindow()){ done = true; }
+    }
+
+    //fills the window and colors its edges: the round of an edge is one more than the last round of its endpoints,
+    //so the edges of a vertex keep their stream order and a hub takes as many rounds as its edges in the window
+    private boolean nextWindow(){
+        int size = 0;
+        while (size<positions.length){
+            if (next==limit){
+                if (block_order==null || next_block>=block_order.length){ break; }
+                next = (long) block_order[next_block++] * EdgeShuffle.BLOCK_SIZE;
+                limit = Math.min(next+EdgeShuffle.BLOCK_SIZE, dataset.size());
+                continue;
+            }
+            positions[size++] = next++;
+        }
+        if (size==0){ return false; }
+        stamp++;
+        int count = 0; //rounds in the window
+        for (int i = 0; i<size; i++){
+            long e = dataset.get(positions[i]);
+            int su = slot(Edge.getU(e));
+            int sv = slot(Edge.getV(e));
+            int r = Math.max(rounds[su], rounds[sv]);
+            edge_round[i] = r;
+            rounds[su] = r+1;
+            rounds[sv] = r+1;
+            count = Math.max(count, r+1);
+        }
+        //counting sort of the edges by round
+        for (int r = 0; r<=count; r++){ round_start[r] = 0; }
+        for (int i = 0; i<size; i++){ round_start[edge_round[i]+1]++; }
+        for (int r = 0; r<count; r++){ round_start[r+1] += round_start[r]; }
+        for (int i = 0; i<size; i++){ order[round_start[edge_round[i]]++] = i; }
+        for (int r = count; r>0; r--){ round_start[r] = round_start[r-1]; }
+        round_start[0] = 0;
+        //steps: each large round alone, the small ones merged with their small neighbours
+        steps = 0;
+        for (int r = 0; r<count; r++){
+            boolean small = (threads==1) || (round_start[r+1]-round_start[r] < threads*MIN_EDGES_PER_THREAD);
+            if (!(small && steps>0 && serial[steps-1])){
+                round_start[steps] = round_start[r];
+                serial[steps] = small;
+                steps++;
+            }
+        }
+        round_start[steps] = size;
+        for (int s = 0; s<steps; s++){
+            if (serial[s]){ serial_edges += round_start[s+1]-round_start[s]; }
+        }
+        windows++;
+        total_rounds += count;
+        return true;
+    }
+
+    private int slot(int x){
+        int s = (x * 0x9E3779B9) & mask;
+        while (stamps[s]==stamp && keys[s]!=x){ s = (s+1) & mask; }
+        if (stamps[s]!=stamp){
+            stamps[s] = stamp;
+            keys[s] = x;
+            rounds[s] = 0;
+        }
+        return s;
+    }
+
+    public long getWindows(){
+        return windows;
+    }
+
+    public long getRounds(){
+        return total_rounds;
+    }
+
+    public long getSerialEdges(){
+        return serial_edges;
+    }
+    
+    //barrier trips, the final one included
+    public long getBarriers(){
+        return barriers;
+    }
+}
@@ -0,0 +1,289 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// Checkpoint.java: snapshot of a coordinated partitioning run (vertex records, loads and thread positions) and its binary file
+
+package partitioner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import application.Globals;
+
+public class Checkpoint {
+
+    //LAYOUT (big endian, as written by DataOutputStream)
+    //  int    magic             "VGCP"
+    //  int    version
+    //  long   seed              seed of the shuffle, the resumed run must see the edges in the same order
+    //  UTF    shuffle
+    //  bool   remap, dedup      the resumed run must load the same edges with the same ids
+    //  long   edges
+    //  int    P
+    //  UTF    algorithm
+    //  double hash_seed         hash of a HashedStrategy, the resumed run must send the vertices to the same shards
+    //  int    hash_shrink
+    //  int    threads
+    //  long   output_length     length of the .edges file at the snapshot, -1 without output
+    //  int    next_block        next block to take with the chunks shuffle, -1 otherwise
+    //  long   position[threads], limit[threads]   edges still to process by each thread
+    //  int    load_edges[P], load_vertices[P]
+    //  int    words             replica words per vertex
+    //  long   vertices
+    //  ...    vertices x (int id, int degree, long replicas[words])
+    public static final int MAGIC = 0x50434756; //"VGCP"
+    public static final int VERSION = 3;
+    private static final int IO_BUFFER = 1<<16;
+    private static final int CHUNK_LONGS = 1<<24; //the records are kept in chunks of at most 128 MB
+
+    long seed;
+    String shuffle;
+    boolean remap;
+    boolean dedup;
+    long edges;
+    int P;
+    String algorithm;
+    double hash_seed;
+    int hash_shrink;
+    int threads;
+    long output_length;
+    int next_block;
+    long[] position;
+    long[] limit;
+    int[] load_edges;
+    int[] load_vertices;
+    int words;
+    long vertices;
+    ArrayList<long[]> records; //chunk_records records per chunk, a record is (id<<32 | degree) then its replica words
+    int chunk_records;
+
+    private Checkpoint(){}
+
+    private void initRecords(int words){
+        this.words = words;
+        this.vertices = 0;
+        this.records = new ArrayList<long[]>();
+        this.chunk_records = Math.max(1, CHUNK_LONGS/(1+words));
+    }
+
+    //offset of the next record, in the last chunk
+    private int appendRecord(){
+        int slot = (int) (vertices % chunk_records);
+        if (slot==0){ records.add(new long[chunk_records*(1+words)]); }
+        vertices++;
+        return slot*(1+words);
+    }
+
+    //copies the state while the partitioner threads are paused (see Checkpointer)
+    static Checkpoint capture(Globals GLOBALS, long edges, PartitionState state, PartitionStrategy algorithm, PartitionerThread[] partitioners, int next_block){
+        Checkpoint result = new Checkpoint();
+        result.seed = GLOBALS.SEED;
+        result.shuffle = GLOBALS.SHUFFLE;
+        result.remap = GLOBALS.REMAP;
+        result.dedup = GLOBALS.DEDUP;
+        result.edges = edges;
+        result.P = GLOBALS.P;
+        result.algorithm = GLOBALS.PARTITION_STRATEGY;
+        if (algorithm instanceof HashedStrategy){
+            result.hash_seed = ((HashedStrategy) algorithm).getHashSeed();
+            result.hash_shrink = ((HashedStrategy) algorithm).getHashShrink();
+        }
+        result.threads = partitioners.length;
+        result.output_length = -1;
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            state.flushOutput();
+            result.output_length = new File(GLOBALS.OUTPUT_FILE_NAME+".edges").length();
+        }
+        result.next_block = next_block;
+        result.position = new long[result.threads];
+        result.limit = new long[result.threads];
+        for (int t = 0; t<result.threads; t++){
+            result.position[t] = partitioners[t].getPosition();
+            result.limit[t] = partitioners[t].getLimit();
+        }
+        result.load_edges = state.getMachines_load();
+        result.load_vertices = state.getMachines_loadVertices();
+        result.initRecords((GLOBALS.P+63)/64);
+        final Checkpoint target = result;
+        final long[] words = new long[result.words];
+        state.forEachVertex(new VertexVisitor(){
+            @Override
+            public void visit(int x, Record record){
+                int offset = target.appendRecord();
+                long[] chunk = target.records.get(target.records.size()-1);
+                chunk[offset] = ((long) x << 32) | (record.getDegree() & 0xFFFFFFFFL);
+                record.getPartitionWords(words);
+                System.arraycopy(words, 0, chunk, offset+1, words.length);
+            }
+        });
+        return result;
+    }
+
+    //writes a temporary file and renames it, so that a crash while writing leaves the previous snapshot intact
+    void write(String file_name) throws IOException{
+        File tmp = new File(file_name+".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), IO_BUFFER));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(seed);
+        out.writeUTF(shuffle);
+        out.writeBoolean(remap);
+        out.writeBoolean(dedup);
+        out.writeLong(edges);
+        out.writeInt(P);
+        out.writeUTF(algorithm);
+        out.writeDouble(hash_seed);
+        out.writeInt(hash_shrink);
+        out.writeInt(threads);
+        out.writeLong(output_length);
+        out.writeInt(next_block);
+        for (int t = 0; t<threads; t++){ out.writeLong(position[t]); out.writeLong(limit[t]); }
+        for (int m = 0; m<P; m++){ out.writeInt(load_edges[m]); }
+        for (int m = 0; m<P; m++){ out.writeInt(load_vertices[m]); }
+        out.writeInt(words);
+        out.writeLong(vertices);
+        for (long i = 0; i<vertices; i++){
+            long[] chunk = records.get((int) (i / chunk_records));
+            int offset = (int) (i % chunk_records)*(1+words);
+            out.writeInt((int) (chunk[offset] >>> 32));
+            out.writeInt((int) chunk[offset]);
+            for (int w = 0; w<words; w++){ out.writeLong(chunk[offset+1+w]); }
+        }
+        out.close();
+        Files.move(tmp.toPath(), new File(file_name).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Checkpoint read(String file_name) throws IOException{
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file_name), IO_BUFFER));
+        try {
+            if (in.readInt()!=MAGIC){ throw new IOException(file_name+" is not a VGP checkpoint"); }
+            int version = in.readInt();
+            if (version!=VERSION){ throw new IOException(file_name+": unsupported checkpoint version "+version); }
+            Checkpoint result = new Checkpoint();
+            result.seed = in.readLong();
+            result.shuffle = in.readUTF();
+            result.remap = in.readBoolean();
+            result.dedup = in.readBoolean();
+            result.edges = in.readLong();
+            result.P = in.readInt();
+            result.algorithm = in.readUTF();
+            result.hash_seed = in.readDouble();
+            result.hash_shrink = in.readInt();
+            result.threads = in.readInt();
+            result.output_length = in.readLong();
+            result.next_block = in.readInt();
+            result.position = new long[result.threads];
+            result.limit = new long[result.threads];
+            for (int t = 0; t<result.threads; t++){ result.position[t] = in.readLong(); result.limit[t] = in.readLong(); }
+            result.load_edges = new int[result.P];
+            result.load_vertices = new int[result.P];
+            for (int m = 0; m<result.P; m++){ result.load_edges[m] = in.readInt(); }
+            for (int m = 0; m<result.P; m++){ result.load_vertices[m] = in.readInt(); }
+            result.initRecords(in.readInt());
+            long vertices = in.readLong();
+            for (long i = 0; i<vertices; i++){
+                int offset = result.appendRecord();
+                long[] chunk = result.records.get(result.records.size()-1);
+                int id = in.readInt();
+                int degree = in.readInt();
+                chunk[offset] = ((long) id << 32) | (degree & 0xFFFFFFFFL);
+                for (int w = 0; w<result.words; w++){ chunk[offset+1+w] = in.readLong(); }
+            }
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+
+    //the resumed run must partition the same edges, in the same order, with the same threads
+    //returns null if it does, the reason otherwise
+    public String checkCompatibility(Globals GLOBALS, long edges){
+        if (!shuffle.equalsIgnoreCase(GLOBALS.SHUFFLE)){ return "the checkpoint was taken with -shuffle "+shuffle; }
+        if (remap!=GLOBALS.REMAP){ return "the checkpoint was taken with -remap "+remap; }
+        if (dedup!=GLOBALS.DEDUP){ return "the checkpoint was taken with -dedup "+dedup; }
+        if (this.edges!=edges){ return "the checkpoint was taken on a graph with "+this.edges+" edges, not "+edges; }
+        if (P!=GLOBALS.P){ return "the checkpoint was taken with "+P+" partitions"; }
+        if (!algorithm.equalsIgnoreCase(GLOBALS.PARTITION_STRATEGY)){ return "the checkpoint was taken with the "+algorithm+" algorithm"; }
+        if (threads!=GLOBALS.THREADS){ return "the checkpoint was taken with "+threads+" threads"; }
+        if (GLOBALS.OUTPUT_FILE_NAME!=null && output_length<0){ return "the checkpoint was taken without -output"; }
+        return null;
+    }
+
+    public long getSeed(){
+        return seed;
+    }
+
+    //cuts the .edges file back to the snapshot, the edges assigned after it will be assigned again
+    public void truncateOutput(Globals GLOBALS) throws IOException{
+        if (GLOBALS.OUTPUT_FILE_NAME==null){ return; }
+        File file = new File(GLOBALS.OUTPUT_FILE_NAME+".edges");
+        if (file.length()<output_length){ throw new IOException(file+" is shorter than at the checkpoint"); }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(output_length);
+        raf.close();
+    }
+
+    //the hash of the interrupted run, before the partitioning starts
+    void restoreHash(PartitionStrategy algorithm){
+        if (algorithm instanceof HashedStrategy){ ((HashedStrategy) algorithm).setHashParameters(hash_seed, hash_shrink); }
+    }
+
+    //loads the records and the machine loads into an empty state
+    public void restore(PartitionState state){
+        for (long i = 0; i<vertices; i++){
+            long[] chunk = records.get((int) (i / chunk_records));
+            int offset = (int) (i % chunk_records)*(1+words);
+            Record record = state.getRecord((int) (chunk[offset] >>> 32));
+            record.setDegree((int) chunk[offset]);
+            for (int w = 0; w<words; w++){
+                long bits = chunk[offset+1+w];
+                while (bits!=0){
+                    record.addPartition(64*w + Long.numberOfTrailingZeros(bits));
+                    bits &= bits-1;
+                }
+            }
+        }
+        state.restoreMachineLoads(load_edges, load_vertices);
+    }
+
+    long getPosition(int t){
+        return position[t];
+    }
+
+    long getLimit(int t){
+        return limit[t];
+    }
+
+    int getNextBlock(){
+        return next_block;
+    }
+}
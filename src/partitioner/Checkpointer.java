@@ -0,0 +1,114 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// Checkpointer.java: periodically pauses the partitioner threads, copies the state and writes it in the background
+
+package partitioner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import application.Globals;
+
+public class Checkpointer implements Runnable{
+
+    public static final int BATCH = 4096; //edges processed by a thread between two pause points
+
+    //every partitioner thread holds the read lock and lets it go for an instant after each batch,
+    //the snapshot takes the write lock: the threads stop at their next pause point until the copy is done
+    private final ReentrantReadWriteLock pause;
+    private final Globals GLOBALS;
+    private final long edges;
+    private final PartitionState state;
+    private final PartitionStrategy algorithm;
+    private final PartitionerThread[] partitioners;
+    private final AtomicInteger next_block; //null unless the threads take blocks in random order
+    private final ScheduledExecutorService scheduler;
+
+    public Checkpointer(Globals G, long edges, PartitionState state, PartitionStrategy algorithm, PartitionerThread[] partitioners, AtomicInteger next_block){
+        this.GLOBALS = G;
+        this.edges = edges;
+        this.state = state;
+        this.algorithm = algorithm;
+        this.partitioners = partitioners;
+        this.next_block = next_block;
+        this.pause = new ReentrantReadWriteLock();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable r){
+                Thread t = new Thread(r, "checkpoint");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    public void start(){
+        scheduler.scheduleWithFixedDelay(this, GLOBALS.CHECKPOINT_INTERVAL, GLOBALS.CHECKPOINT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    //called once the partitioning is complete: the last snapshot is no longer needed
+    public void stop(){
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+        new File(GLOBALS.CHECKPOINT).delete();
+    }
+
+    //the copy is taken with the threads paused, the file is written while they run
+    @Override
+    public void run(){
+        Checkpoint checkpoint;
+        pause.writeLock().lock();
+        try {
+            checkpoint = Checkpoint.capture(GLOBALS, edges, state, algorithm, partitioners, (next_block!=null) ? next_block.get() : -1);
+        } finally {
+            pause.writeLock().unlock();
+        }
+        try {
+            checkpoint.write(GLOBALS.CHECKPOINT);
+        } catch (IOException ex) {
+            System.out.println("\nError: Checkpointer.run, the partitioning goes on without this checkpoint.\n\n");
+            ex.printStackTrace();
+        }
+    }
+
+    void enter(){
+        pause.readLock().lock();
+    }
+
+    void pausePoint(){
+        pause.readLock().unlock();
+        pause.readLock().lock();
+    }
+
+    void exit(){
+        pause.readLock().unlock();
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// DeferredReplicas.java: partition of every edge, assigned without locks, and the pass that builds the vertex records from it
+
+package partitioner;
+
+import core.Edge;
+import core.EdgeBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class DeferredReplicas {
+
+    //indexed by edge position like the dataset, each partitioner thread writes only the positions it processes
+    private final int[][] chunks;
+
+    public DeferredReplicas(EdgeBuffer dataset){
+        long n = dataset.size();
+        int count = (int) ((n + EdgeBuffer.CHUNK_SIZE - 1) >>> EdgeBuffer.CHUNK_BITS);
+        chunks = new int[count][];
+        for (int c = 0; c<count; c++){
+            chunks[c] = new int[(int) Math.min(EdgeBuffer.CHUNK_SIZE, n - ((long) c << EdgeBuffer.CHUNK_BITS))];
+        }
+    }
+
+    void set(long i, int m){
+        chunks[(int) (i >>> EdgeBuffer.CHUNK_BITS)][(int) (i & (EdgeBuffer.CHUNK_SIZE-1))] = m;
+    }
+
+    int get(long i){
+        return chunks[(int) (i >>> EdgeBuffer.CHUNK_BITS)][(int) (i & (EdgeBuffer.CHUNK_SIZE-1))];
+    }
+
+    //adds the replicas and the degrees of every edge to the records: thread t scans all the edges but only updates
+    //the vertices it owns, so no record is ever touched by two threads and no lock is needed
+    public void build(final EdgeBuffer dataset, final PartitionState state, final int threads){
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t<threads; t++){
+            final int owner = t;
+            executor.execute(new Runnable(){
+                @Override
+                public void run(){
+                    long n = dataset.size();
+                    for (long i = 0; i<n; i++){
+                        long e = dataset.get(i);
+                        int u = Edge.getU(e);
+                        int v = Edge.getV(e);
+                        if (owner(u, threads)==owner){ add(state, u, get(i)); }
+                        if (owner(v, threads)==owner){ add(state, v, get(i)); }
+                    }
+                }
+            });
+        }
+        try {
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+    }
+
+    private static int owner(int x, int threads){
+        int h = x * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), threads);
+    }
+
+    private static void add(PartitionState state, int x, int m){
+        Record record = state.getRecord(x);
+        if (!record.hasReplicaInPartition(m)){ record.addPartition(m); state.incrementMachineLoadVertices(m); }
+        record.incrementDegree();
+    }
+}
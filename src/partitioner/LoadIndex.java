@@ -0,0 +1,100 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// LoadIndex.java: tournament tree over the partition loads, finds the least loaded partitions in O(log P)
+
+package partitioner;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LoadIndex {
+
+    //node i has children 2i and 2i+1, the leaf of partition m is leaves+m; each node packs the min load of its
+    //subtree (high 32 bits) and the number of its partitions at that load (low 32 bits)
+    //the nodes are updated without locks: a race can leave a node below the true min of its subtree (loads only
+    //grow), never above it, so select may land on a partition that is no longer at the min; the caller checks the
+    //load it finds and calls repair, which recomputes the path with the current loads
+    private static final long PADDING = (long) Integer.MAX_VALUE << 32; //leaves beyond P, no partition
+
+    private final int P;
+    private final int leaves; //power of two >= P
+    private final AtomicLongArray nodes;
+
+    public LoadIndex(int P){
+        this.P = P;
+        int n = 1;
+        while (n<P){ n <<= 1; }
+        leaves = n;
+        nodes = new AtomicLongArray(2*leaves);
+        for (int m = 0; m<leaves; m++){ nodes.set(leaves+m, (m<P) ? 1 : PADDING); }
+        for (int i = leaves-1; i>=1; i--){ nodes.set(i, combine(nodes.get(2*i), nodes.get(2*i+1))); }
+    }
+
+    private static long combine(long left, long right){
+        int l = (int) (left >>> 32);
+        int r = (int) (right >>> 32);
+        if (l<r){ return left; }
+        if (r<l){ return right; }
+        return left + (right & 0xFFFFFFFFL);
+    }
+
+    //partition m has now the given load
+    public void update(int m, int load){
+        int i = leaves+m;
+        nodes.set(i, ((long) load << 32) | 1);
+        for (i >>>= 1; i>=1; i >>>= 1){
+            nodes.set(i, combine(nodes.get(2*i), nodes.get(2*i+1)));
+        }
+    }
+
+    //called when select returned a partition whose load is not the min any more
+    public void repair(int m, int load){
+        update(m, load);
+    }
+
+    public int getMin(){
+        return (int) (nodes.get(1) >>> 32);
+    }
+
+    //partitions whose load is getMin()
+    public int getMinCount(){
+        return (int) nodes.get(1);
+    }
+
+    //the r-th partition (0 <= r < getMinCount()) among those at load min, in partition order
+    //returns -1 if the tree has changed under the descent
+    public int select(int r, int min){
+        int i = 1;
+        while (i<leaves){
+            long left = nodes.get(2*i);
+            if ((int) (left >>> 32)==min){
+                int count = (int) left;
+                if (r<count){ i = 2*i; continue; }
+                r -= count;
+            }
+            i = 2*i+1;
+        }
+        int m = i-leaves;
+        return (m<P) ? m : -1;
+    }
+}
@@ -0,0 +1,128 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// LoadTracker.java: edge load of each partition, updated without locks, with O(1) min and max load
+
+package partitioner;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LoadTracker {
+
+    //each counter sits on its own cache line, so threads filling different partitions do not invalidate each other
+    private static final int STRIDE = 8; //longs per 64-byte cache line
+    //loads histogram: slot l & RING_MASK counts the partitions whose load is l, which is exact as long as the
+    //loads are within RING of each other; wider spreads fall back to a scan of the counters
+    private static final int RING = 1024;
+    private static final int RING_MASK = RING-1;
+
+    private final int P;
+    private final AtomicLongArray loads;
+    private final AtomicIntegerArray histogram;
+    private final AtomicLong min;
+    private final AtomicLong max;
+    private final LoadIndex index; //null unless requested, see SparseScoring
+
+    public LoadTracker(int P){
+        this(P, false);
+    }
+
+    //indexed: also keep the loads in a LoadIndex, at O(log P) per increment
+    public LoadTracker(int P, boolean indexed){
+        this.P = P;
+        this.index = indexed ? new LoadIndex(P) : null;
+        loads = new AtomicLongArray(P*STRIDE);
+        histogram = new AtomicIntegerArray(RING);
+        histogram.set(0, P);
+        min = new AtomicLong(0);
+        max = new AtomicLong(0);
+    }
+
+    //the new load is counted before the old one is released, so a slot is empty only when no partition
+    //holds that load, and the min can never move past a partition that is being incremented
+    public int increment(int m){
+        long load = loads.incrementAndGet(m*STRIDE);
+        histogram.incrementAndGet((int) (load & RING_MASK));
+        histogram.decrementAndGet((int) ((load-1) & RING_MASK));
+        long current = max.get();
+        while (load>current && !max.compareAndSet(current, load)){ current = max.get(); }
+        if (index!=null){ index.update(m, (int) load); }
+        return (int) load;
+    }
+
+    public int get(int m){
+        return (int) loads.get(m*STRIDE);
+    }
+
+    public LoadIndex getIndex(){
+        return index;
+    }
+
+    public int getMax(){
+        return (int) max.get();
+    }
+
+    //loads never decrease, so the min only moves forward: past each load whose slot is empty
+    public int getMin(){
+        long current = min.get();
+        while (true){
+            if (max.get()-current >= RING-1){ return scanMin(); }
+            if (histogram.get((int) (current & RING_MASK))!=0){ return (int) current; }
+            min.compareAndSet(current, current+1);
+            current = min.get();
+        }
+    }
+
+    private int scanMin(){
+        long result = Long.MAX_VALUE;
+        for (int m = 0; m<P; m++){ result = Math.min(result, loads.get(m*STRIDE)); }
+        long current = min.get();
+        while (result>current && !min.compareAndSet(current, result)){ current = min.get(); }
+        return (int) result;
+    }
+
+    //sets the loads, only while no thread is using the tracker (see Checkpoint)
+    public void restore(int[] result){
+        long lowest = Long.MAX_VALUE;
+        long highest = 0;
+        for (int l = 0; l<RING; l++){ histogram.set(l, 0); }
+        for (int m = 0; m<P; m++){
+            loads.set(m*STRIDE, result[m]);
+            histogram.incrementAndGet(result[m] & RING_MASK);
+            lowest = Math.min(lowest, result[m]);
+            highest = Math.max(highest, result[m]);
+        }
+        min.set(lowest);
+        max.set(highest);
+        if (index!=null){
+            for (int m = 0; m<P; m++){ index.update(m, result[m]); }
+        }
+    }
+
+    //copies every load into result (P entries) with plain reads, no lock taken
+    public void snapshot(int[] result){
+        for (int m = 0; m<P; m++){ result[m] = (int) loads.get(m*STRIDE); }
+    }
+}
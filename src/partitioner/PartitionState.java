@@ -25,17 +25,22 @@
 
 package partitioner;
 
-import core.Edge;
-import java.util.SortedSet;
 
 public interface PartitionState {
     public Record getRecord(int x);
     public int getMachineLoad(int m);
-    public void incrementMachineLoad(int m, Edge e);
+    public void incrementMachineLoad(int m, int u, int v);
+    public void incrementMachineLoadVertices(int m);
     public int getMinLoad();
     public int getMaxLoad();
+    public LoadIndex getLoadIndex(); //null unless the scoring is sparse
     public int[] getMachines_load();
+    public void snapshotMachineLoads(int[] result); //copies the edge load of every partition, without locking
+    public int[] getMachines_loadVertices();
     public int getTotalReplicas();
     public int getNumVertices();
-    public SortedSet<Integer> getVertexIds();
+    public void forEachVertex(VertexVisitor visitor); //every vertex with a record, in increasing id order
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices); //see Checkpoint, before the partitioning starts
+    public void flushOutput(); //writes the buffered lines of the .edges file
+    public void closeOutput();
 }
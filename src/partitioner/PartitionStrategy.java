@@ -29,4 +29,5 @@ import core.Edge;
 
 public interface PartitionStrategy {
     void performStep(Edge t, PartitionState state);
+    void performStep(int u, int v, PartitionState state);
 }
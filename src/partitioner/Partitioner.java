@@ -25,13 +25,18 @@
 
 package partitioner;
 
-import core.Edge;
-import java.util.LinkedList;
-import java.util.List;
+import core.EdgeBuffer;
+import core.EdgeShuffle;
+import input.EdgeStream;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import partitioner.coordinated_state.CoordinatedPartitionState;
+import partitioner.oblivious_state.ObliviousPartitionState;
+import partitioner.sharded.ShardRing;
+import partitioner.sharded.ShardWorker;
 import partitioner.strategies.Constrained;
 import partitioner.strategies.DBH;
 import partitioner.strategies.Greedy;
@@ -41,48 +46,265 @@ import application.Globals;
 
 public class Partitioner {
     
-    private List<Edge> dataset;
+    private EdgeBuffer dataset;
     private PartitionStrategy algorithm;
+    private VertexLocks locks; //shared by the threads through the strategy
+    private ObliviousPartitionState[] oblivious; //state of each thread with -coordination oblivious, null otherwise
+    private BatchScheduler batch; //schedule of the last -execution batch partitioning, null otherwise
+    private ShardWorker[] shards; //workers of the last -execution sharded partitioning, null otherwise
+    private long throughput; //edges per second of the last partitioning
     private Globals GLOBALS;
 
-    public Partitioner(List<Edge> dataset, Globals G) {
+    public Partitioner(EdgeBuffer dataset, Globals G) {
+        this(dataset, null, G);
+    }
+    
+    public Partitioner(Globals G) {
+        this(null, null, G);
+    }
+    
+    //degrees: exact vertex degrees indexed by id used by hdrf and dbh, null to use the partial degrees
+    public Partitioner(EdgeBuffer dataset, int[] degrees, Globals G) {
         this.GLOBALS = G;
         this.dataset = dataset;
+        this.locks = new VertexLocks(!GLOBALS.EXECUTION.equalsIgnoreCase("batch") && !GLOBALS.EXECUTION.equalsIgnoreCase("sharded"));
         //"greedy", "hdrf", "hashing", "grid", "pds
-        if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("greedy")){ algorithm = new Greedy(GLOBALS); }
-        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hdrf")){ algorithm = new HDRF(GLOBALS); }
-        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hashing")){ algorithm = new Hashing(GLOBALS); }
-        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("grid")){ algorithm = new Constrained(GLOBALS); }
-        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("pds")){ algorithm = new Constrained(GLOBALS); }
-        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("dbh")){ algorithm = new DBH(GLOBALS); }
+        if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("greedy")){ algorithm = new Greedy(GLOBALS, locks); }
+        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hdrf")){ algorithm = new HDRF(GLOBALS, degrees, locks); }
+        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("hashing")){ algorithm = new Hashing(GLOBALS, locks); }
+        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("grid")){ algorithm = new Constrained(GLOBALS, locks); }
+        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("pds")){ algorithm = new Constrained(GLOBALS, locks); }
+        else if (GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("dbh")){ algorithm = new DBH(GLOBALS, degrees, locks); }
     }  
     
-    public CoordinatedPartitionState performCoordinatedPartition(){
-        return startCoordinated();
+    //vertices: the vertex ids are in 0..vertices-1, needed by deferred dbh without exact degrees
+    public void setVertices(int vertices){
+        if (algorithm instanceof DBH){ ((DBH) algorithm).useDegreeCounters(vertices); }
+    }
+    
+    //null if the strategy does not hash the vertices
+    public HashedStrategy getHashedStrategy(){
+        return (algorithm instanceof HashedStrategy) ? (HashedStrategy) algorithm : null;
     }
     
-    private CoordinatedPartitionState startCoordinated(){
-        CoordinatedPartitionState state = new CoordinatedPartitionState(GLOBALS);
+    //state: an empty partition state, see CoordinatedPartitionState and ArrayPartitionState
+    public PartitionState performCoordinatedPartition(PartitionState state){
+        return startCoordinated(state, null);
+    }
+    
+    //resume: checkpoint already restored into state, the threads continue from where it was taken
+    public PartitionState performCoordinatedPartition(PartitionState state, Checkpoint resume){
+        return startCoordinated(state, resume);
+    }
+    
+    private PartitionState startCoordinated(PartitionState state, Checkpoint resume){
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("batch")){ return startBatch(state); }
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("sharded")){ return startSharded(state); }
         int processors = GLOBALS.THREADS;
         ExecutorService executor=Executors.newFixedThreadPool(processors);
-        int n = dataset.size();
-        int subSize = n / processors + 1;
-        for (int t = 0; t < processors; t++) {
-            final int iStart = t * subSize;
-            final int iEnd = Math.min((t + 1) * subSize, n);
-            if (iEnd>=iStart){
-                List<Edge> list= dataset.subList(iStart, iEnd);
-                Runnable x = new PartitionerThread(list, state, algorithm, new LinkedList());
-                executor.execute(x);
+        PartitionerThread[] threads = new PartitionerThread[processors];
+        AtomicInteger next_block = null;
+        if (GLOBALS.SHUFFLE.equalsIgnoreCase("chunks")){
+            //the edges stay in place, the threads take blocks of edges in random order
+            int[] order = EdgeShuffle.blockOrder(dataset, GLOBALS.SEED);
+            next_block = new AtomicInteger((resume!=null) ? resume.getNextBlock() : 0);
+            for (int t = 0; t < processors; t++) {
+                threads[t] = new PartitionerThread(dataset, order, next_block, threadState(state, t), algorithm);
             }
         }
+        else{
+            long n = dataset.size();
+            long subSize = n / processors + 1;
+            for (int t = 0; t < processors; t++) {
+                final long iStart = Math.min(t * subSize, n);
+                final long iEnd = Math.min((t + 1) * subSize, n);
+                threads[t] = new PartitionerThread(dataset, iStart, iEnd, threadState(state, t), algorithm);
+            }
+        }
+        if (resume!=null){
+            resume.restoreHash(algorithm);
+            for (int t = 0; t < processors; t++) { threads[t].resume(resume.getPosition(t), resume.getLimit(t)); }
+        }
+        DeferredReplicas deferred = null;
+        if (GLOBALS.EXECUTION.equalsIgnoreCase("deferred")){
+            deferred = new DeferredReplicas(dataset);
+            for (int t = 0; t < processors; t++) { threads[t].setDeferred(deferred, (DeferredStrategy) algorithm); }
+        }
+        Checkpointer checkpointer = null;
+        if (GLOBALS.CHECKPOINT!=null){
+            checkpointer = new Checkpointer(GLOBALS, dataset.size(), state, algorithm, threads, next_block);
+            for (int t = 0; t < processors; t++) { threads[t].setCheckpointer(checkpointer); }
+            checkpointer.start();
+        }
+        long edges = assignedEdges(state);
+        long begin = System.nanoTime();
+        for (int t = 0; t < processors; t++) {
+            executor.execute(threads[t]);
+        }
         try { 
             executor.shutdown();
             executor.awaitTermination(60, TimeUnit.DAYS);
         } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+        if (checkpointer!=null){ checkpointer.stop(); }
+        if (deferred!=null){ deferred.build(dataset, state, processors); }
+        mergeThreadStates();
+        setThroughput(assignedEdges(state)-edges, System.nanoTime()-begin);
         return state;
     }  
     
+    //the threads run the rounds of BatchScheduler one after the other, with no vertex lock
+    private PartitionState startBatch(PartitionState state){
+        int processors = GLOBALS.THREADS;
+        ExecutorService executor=Executors.newFixedThreadPool(processors);
+        int[] order = null;
+        if (GLOBALS.SHUFFLE.equalsIgnoreCase("chunks")){ order = EdgeShuffle.blockOrder(dataset, GLOBALS.SEED); }
+        batch = new BatchScheduler(dataset, order, state, algorithm, processors, GLOBALS.BATCH_WINDOW);
+        long edges = assignedEdges(state);
+        long begin = System.nanoTime();
+        for (int t = 0; t < processors; t++) {
+            executor.execute(batch.worker(t));
+        }
+        try { 
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+        setThroughput(assignedEdges(state)-edges, System.nanoTime()-begin);
+        return state;
+    }
+    
+    //each worker owns the records of the vertices that hash to it, the others ask it through a ring per pair of workers
+    private PartitionState startSharded(PartitionState state){
+        int processors = GLOBALS.THREADS;
+        ExecutorService executor=Executors.newFixedThreadPool(processors);
+        ShardRing[][] rings = new ShardRing[processors][processors];
+        for (int i = 0; i < processors; i++) {
+            for (int j = 0; j < processors; j++) {
+                if (i!=j){ rings[i][j] = new ShardRing(ShardWorker.RING_SIZE); }
+            }
+        }
+        AtomicLong completed = new AtomicLong(0);
+        shards = new ShardWorker[processors];
+        if (GLOBALS.SHUFFLE.equalsIgnoreCase("chunks")){
+            int[] order = EdgeShuffle.blockOrder(dataset, GLOBALS.SEED);
+            AtomicInteger next_block = new AtomicInteger(0);
+            for (int t = 0; t < processors; t++) {
+                shards[t] = new ShardWorker(t, rings, dataset, 0, 0, order, next_block, state, algorithm, completed, GLOBALS.P);
+            }
+        }
+        else{
+            long n = dataset.size();
+            long subSize = n / processors + 1;
+            for (int t = 0; t < processors; t++) {
+                final long iStart = Math.min(t * subSize, n);
+                final long iEnd = Math.min((t + 1) * subSize, n);
+                shards[t] = new ShardWorker(t, rings, dataset, iStart, iEnd, null, null, state, algorithm, completed, GLOBALS.P);
+            }
+        }
+        long edges = assignedEdges(state);
+        long begin = System.nanoTime();
+        for (int t = 0; t < processors; t++) {
+            executor.execute(shards[t]);
+        }
+        try { 
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+        setThroughput(assignedEdges(state)-edges, System.nanoTime()-begin);
+        return state;
+    }
+    
+    //the shared state, or with -coordination oblivious a private state of thread t merged into the shared one
+    private PartitionState threadState(PartitionState state, int t){
+        if (!GLOBALS.COORDINATION.equalsIgnoreCase("oblivious")){ return state; }
+        if (oblivious==null){ oblivious = new ObliviousPartitionState[GLOBALS.THREADS]; }
+        oblivious[t] = new ObliviousPartitionState(GLOBALS, state);
+        return oblivious[t];
+    }
+    
+    //the changes since the last merge of each thread, once all the threads are done
+    private void mergeThreadStates(){
+        if (oblivious==null){ return; }
+        for (ObliviousPartitionState local : oblivious){ local.sync(); }
+    }
+    
+    public PartitionState performStreamingPartition(EdgeStream stream){
+        return startStreaming(stream, new CoordinatedPartitionState(GLOBALS));
+    }
+    
+    //state: a partition state, possibly holding the result of a previous run (see PreviousPartition)
+    public PartitionState performStreamingPartition(EdgeStream stream, PartitionState state){
+        return startStreaming(stream, state);
+    }
+    
+    private PartitionState startStreaming(EdgeStream stream, PartitionState state){
+        int processors = GLOBALS.THREADS;
+        ExecutorService executor=Executors.newFixedThreadPool(processors);
+        long edges = assignedEdges(state);
+        long begin = System.nanoTime();
+        stream.start();
+        for (int t = 0; t < processors; t++) {
+            Runnable x = new StreamingPartitionerThread(stream, threadState(state, t), algorithm);
+            executor.execute(x);
+        }
+        try { 
+            executor.shutdown();
+            executor.awaitTermination(60, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+        mergeThreadStates();
+        setThroughput(assignedEdges(state)-edges, System.nanoTime()-begin);
+        return state;
+    }
+    
+    //edges in the state, those restored from a checkpoint or a previous run included
+    private static long assignedEdges(PartitionState state){
+        long result = 0;
+        for (int load : state.getMachines_load()){ result += load; }
+        return result;
+    }
+    
+    private void setThroughput(long edges, long nanos){
+        throughput = (long) (edges / (Math.max(1, nanos) / 1e9));
+    }
+    
+    public long getThroughput(){
+        return throughput;
+    }
+    
+    public VertexLocks getLocks(){
+        return locks;
+    }
+    
+    //merges of the oblivious thread states, the final ones included, 0 for a coordinated run
+    public long getSyncs(){
+        long result = 0;
+        if (oblivious!=null){
+            for (ObliviousPartitionState local : oblivious){ result += local.getSyncs(); }
+        }
+        return result;
+    }
+    
+    public BatchScheduler getBatchScheduler(){
+        return batch;
+    }
+    
+    //messages exchanged by the shard workers, 0 unless -execution sharded
+    public long getShardMessages(){
+        long result = 0;
+        if (shards!=null){
+            for (ShardWorker shard : shards){ result += shard.getSent(); }
+        }
+        return result;
+    }
+    
+    //edges whose endpoints are owned by the same shard worker
+    public long getShardLocalEdges(){
+        long result = 0;
+        if (shards!=null){
+            for (ShardWorker shard : shards){ result += shard.getLocalEdges(); }
+        }
+        return result;
+    }
+    
     public static boolean is_grid_compatible(int partitions) {
         int nrow, ncol;
         double approx_sqrt = Math.sqrt(partitions);
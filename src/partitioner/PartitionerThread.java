@@ -26,27 +26,105 @@
 package partitioner;
 
 import core.Edge;
-import java.util.LinkedList;
-import java.util.List;
+import core.EdgeBuffer;
+import core.EdgeShuffle;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PartitionerThread implements Runnable{
 
-    private final List<Edge> list;
+    private final EdgeBuffer dataset;
+    private final long begin; //first edge of the slice
+    private final long end; //last edge of the slice (excluded)
+    private final int[] block_order; //if not null, blocks of EdgeShuffle.BLOCK_SIZE edges are taken in this order
+    private final AtomicInteger next_block; //shared among the threads that use block_order
     private final PartitionState state;
     private final PartitionStrategy algorithm;
-    LinkedList<Integer> id_partitions;
+    private Checkpointer checkpointer; //null if no checkpoint is taken
+    private DeferredReplicas deferred; //if not null, the edges are only assigned (see DeferredReplicas)
+    private DeferredStrategy deferred_algorithm;
+    private long position; //next edge to process in the current range, read by Checkpoint
+    private long limit; //end of the current range (excluded)
 
-    public PartitionerThread(List<Edge> list, PartitionState state, PartitionStrategy algorithm, LinkedList<Integer> ids) {
-        this.list = list;
+    public PartitionerThread(EdgeBuffer dataset, long begin, long end, PartitionState state, PartitionStrategy algorithm) {
+        this.dataset = dataset;
+        this.begin = begin;
+        this.end = end;
+        this.position = begin;
+        this.limit = end;
+        this.block_order = null;
+        this.next_block = null;
         this.state = state;
         this.algorithm = algorithm;
-        this.id_partitions = ids;
+    }
+    
+    public PartitionerThread(EdgeBuffer dataset, int[] block_order, AtomicInteger next_block, PartitionState state, PartitionStrategy algorithm) {
+        this.dataset = dataset;
+        this.begin = 0;
+        this.end = 0;
+        this.block_order = block_order;
+        this.next_block = next_block;
+        this.state = state;
+        this.algorithm = algorithm;
+    }
+    
+    void setCheckpointer(Checkpointer checkpointer){
+        this.checkpointer = checkpointer;
+    }
+    
+    void setDeferred(DeferredReplicas deferred, DeferredStrategy deferred_algorithm){
+        this.deferred = deferred;
+        this.deferred_algorithm = deferred_algorithm;
+    }
+    
+    //the thread first completes the range it was processing when the checkpoint was taken
+    void resume(long position, long limit){
+        this.position = position;
+        this.limit = limit;
+    }
+    
+    long getPosition(){
+        return position;
+    }
+    
+    long getLimit(){
+        return limit;
     }
     
     @Override
     public void run() {
-        for (Edge t: list){
-            algorithm.performStep(t, state);
+        if (checkpointer!=null){ checkpointer.enter(); }
+        try {
+            process(position, limit); //the slice, or the range left by a checkpoint
+            if (block_order==null){ return; }
+            int b;
+            while ((b = next_block.getAndIncrement())<block_order.length){
+                long first = (long) block_order[b] * EdgeShuffle.BLOCK_SIZE;
+                process(first, Math.min(first+EdgeShuffle.BLOCK_SIZE, dataset.size()));
+            }
+        } finally {
+            if (checkpointer!=null){ checkpointer.exit(); }
+        }
+    }
+    
+    private void process(long from, long to){
+        position = from;
+        limit = to;
+        while (position<limit){
+            long stop = Math.min(position+Checkpointer.BATCH, limit);
+            if (deferred==null){
+                for (long i = position; i<stop; i++){
+                    long e = dataset.get(i);
+                    algorithm.performStep(Edge.getU(e), Edge.getV(e), state);
+                }
+            }
+            else{
+                for (long i = position; i<stop; i++){
+                    long e = dataset.get(i);
+                    deferred.set(i, deferred_algorithm.assign(Edge.getU(e), Edge.getV(e), state));
+                }
+            }
+            position = stop;
+            if (checkpointer!=null){ checkpointer.pausePoint(); }
         }
     }
 }
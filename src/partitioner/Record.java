@@ -28,12 +28,16 @@ package partitioner;
 import java.util.Iterator;
 
 public interface Record {
-    public Iterator<Byte> getPartitions();
+    public Iterator<Integer> getPartitions();
     public void addPartition(int m);
     public boolean hasReplicaInPartition(int m);
+    public void getPartitionWords(long[] words); //the replica set as a bitset, word w holds partitions 64*w..64*w+63
     public boolean getLock();
     public boolean releaseLock();
+    public int getVersion(); //odd while the lock is held, changes on every release (see VertexLocks.tryLock)
+    public boolean getLock(int version); //takes the lock only if the version is still the given, even, one
     public int getReplicas();
     public int getDegree();
     public void incrementDegree();
+    public void setDegree(int degree);
 }
@@ -0,0 +1,53 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// StreamingPartitionerThread.java: thread that perform the partitioning of the edges coming from an EdgeStream
+
+package partitioner;
+
+import input.EdgeStream;
+
+public class StreamingPartitionerThread implements Runnable{
+
+    private final EdgeStream stream;
+    private final PartitionState state;
+    private final PartitionStrategy algorithm;
+
+    public StreamingPartitionerThread(EdgeStream stream, PartitionState state, PartitionStrategy algorithm) {
+        this.stream = stream;
+        this.state = state;
+        this.algorithm = algorithm;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int[] batch;
+            while ((batch = stream.take())!=null){
+                for (int i = 0; i<batch.length; i+=2){
+                    algorithm.performStep(batch[i], batch[i+1], state);
+                }
+            }
+        } catch (InterruptedException ex) {System.out.println("InterruptedException "+ex);ex.printStackTrace();}
+    }
+}
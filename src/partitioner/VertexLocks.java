@@ -0,0 +1,135 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// VertexLocks.java: takes and releases the locks of the two endpoints of an edge, shared by all the strategies
+
+package partitioner;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class VertexLocks {
+
+    public static final int SPINS = 64; //busy-wait attempts before parking
+    public static final long MIN_PARK_NANOS = 1000;
+    public static final long MAX_PARK_NANOS = 1000000;
+
+    private final boolean enabled; //false if the threads never share a vertex anyway, see BatchScheduler
+    
+    //CONTENTION COUNTERS
+    private final LongAdder acquisitions; //locks taken
+    private final LongAdder contended; //locks found taken at the first attempt
+    private final LongAdder spins; //busy-wait iterations
+    private final LongAdder parks; //times a thread parked
+    
+    //OPTIMISTIC COMMITS (see tryLock)
+    private final LongAdder validations; //commits attempted
+    private final LongAdder conflicts; //commits that found a record changed since its version was read
+
+    public VertexLocks(){
+        this(true);
+    }
+    
+    public VertexLocks(boolean enabled){
+        this.enabled = enabled;
+        acquisitions = new LongAdder();
+        contended = new LongAdder();
+        spins = new LongAdder();
+        parks = new LongAdder();
+        validations = new LongAdder();
+        conflicts = new LongAdder();
+    }
+
+    //the locks are always taken in increasing vertex id order, so two threads can never wait for each other
+    public void lock(int u, Record u_record, int v, Record v_record){
+        if (!enabled){ return; }
+        if (u==v){ acquire(u_record); }
+        else if (u<v){ acquire(u_record); acquire(v_record); }
+        else { acquire(v_record); acquire(u_record); }
+    }
+
+    public void unlock(Record u_record, Record v_record){
+        if (!enabled){ return; }
+        u_record.releaseLock();
+        if (v_record!=u_record){ v_record.releaseLock(); }
+    }
+
+    //commit of a step computed without locks: takes both locks, in increasing vertex id order, only if neither record
+    //changed since its version was read, so that what the step read is still valid; false, holding no lock, otherwise
+    public boolean tryLock(int u, Record u_record, int u_version, int v, Record v_record, int v_version){
+        validations.increment();
+        boolean taken;
+        if (u==v){ taken = u_record.getLock(u_version); }
+        else if (u<v){ taken = u_record.getLock(u_version) && (v_record.getLock(v_version) || !u_record.releaseLock()); }
+        else { taken = v_record.getLock(v_version) && (u_record.getLock(u_version) || !v_record.releaseLock()); }
+        if (!taken){ conflicts.increment(); }
+        return taken;
+    }
+    
+    //spins briefly (the lock is usually held for one scoring step), then parks with exponential backoff
+    private void acquire(Record record){
+        acquisitions.increment();
+        if (record.getLock()){ return; }
+        contended.increment();
+        int spin = 0;
+        int park = 0;
+        long park_nanos = MIN_PARK_NANOS;
+        while (!record.getLock()){
+            if (spin<SPINS){
+                Thread.onSpinWait();
+                spin++;
+            }
+            else{
+                LockSupport.parkNanos(park_nanos);
+                park_nanos = Math.min(2*park_nanos, MAX_PARK_NANOS);
+                park++;
+            }
+        }
+        spins.add(spin);
+        if (park>0){ parks.add(park); }
+    }
+
+    public long getAcquisitions(){
+        return acquisitions.sum();
+    }
+
+    public long getContended(){
+        return contended.sum();
+    }
+
+    public long getSpins(){
+        return spins.sum();
+    }
+
+    public long getParks(){
+        return parks.sum();
+    }
+    
+    public long getValidations(){
+        return validations.sum();
+    }
+    
+    public long getConflicts(){
+        return conflicts.sum();
+    }
+}
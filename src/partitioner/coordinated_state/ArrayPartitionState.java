@@ -0,0 +1,331 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ArrayPartitionState.java: PartitionState for vertex ids in a known range 0..n-1, records kept in parallel primitive arrays
+
+package partitioner.coordinated_state;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import partitioner.LoadIndex;
+import partitioner.LoadTracker;
+import partitioner.PartitionState;
+import partitioner.Record;
+import partitioner.VertexVisitor;
+import application.Globals;
+import output.DatWriter;
+
+public class ArrayPartitionState implements PartitionState{
+
+    //RECORD OF VERTEX x (no object per vertex, the same layout as the slots of OffHeapPartitionState)
+    //  degrees[x]
+    //  flags[x]    bit 0: locked, bit 1: the vertex has been seen, bits 2-31: releases of the lock
+    //  replicas[x >>> chunk_bits][(x & chunk_mask)*words + w]   word w of the replica bitset
+    //the first thread that asks for vertex x marks it seen with a single atomic or on flags[x],
+    //so getRecord never blocks and takes a bounded number of steps
+    private static final int LOCKED = 1;
+    private static final int PRESENT = 2;
+    private static final int RELEASE = 4-LOCKED; //clears the lock bit and counts the release
+    private static final int MAX_CHUNK_LONGS = 1<<27; //java arrays are indexed by int
+    private static final VarHandle FLAGS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int words; //replica words per vertex
+    private final int chunk_bits; //vertices per chunk of replicas = 2^chunk_bits
+    private final int chunk_mask;
+    private final int[] degrees;
+    private final int[] flags;
+    private final long[][] replicas;
+    private final ThreadLocal<RecordViews> views;
+    private final AtomicInteger num_vertices;
+    private final LoadTracker machines_load_edges;
+    private final AtomicInteger[] machines_load_vertices;
+    private final Globals GLOBALS;
+    private final int[] original_ids; //original id of each vertex if the ids were remapped, null otherwise
+    private DatWriter out; //to print the final partition of each edge
+
+    //vertices: number of vertex ids, every id must be in 0..vertices-1
+    public ArrayPartitionState(Globals G, int vertices, int[] original_ids) {
+        this.GLOBALS = G;
+        this.original_ids = original_ids;
+        words = (GLOBALS.P+63)/64;
+        int bits = 0;
+        while ((2L<<bits)*words <= MAX_CHUNK_LONGS && (1L<<bits) < vertices){ bits++; }
+        chunk_bits = bits;
+        chunk_mask = (1<<chunk_bits)-1;
+        degrees = new int[vertices];
+        flags = new int[vertices];
+        replicas = new long[(int) (((long) vertices + chunk_mask) >>> chunk_bits)][];
+        for (int c = 0; c<replicas.length; c++){
+            long first = (long) c << chunk_bits;
+            replicas[c] = new long[(int) (Math.min(1L<<chunk_bits, vertices-first)*words)];
+        }
+        views = new ThreadLocal<RecordViews>(){
+            @Override
+            protected RecordViews initialValue(){
+                RecordViews.View[] ring = new RecordViews.View[RecordViews.SIZE];
+                for (int i = 0; i<ring.length; i++){ ring[i] = new ArrayRecord(); }
+                return new RecordViews(ring);
+            }
+        };
+        num_vertices = new AtomicInteger(0);
+        machines_load_edges = new LoadTracker(GLOBALS.P, GLOBALS.SCORING.equalsIgnoreCase("sparse"));
+        machines_load_vertices = new AtomicInteger[GLOBALS.P];
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            machines_load_vertices[i] = new AtomicInteger(0);
+        }
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".edges", GLOBALS.RESUME!=null || GLOBALS.PREVIOUS!=null); //appends to a checkpoint or previous run
+        }
+    }
+
+    //a view of the calling thread, see RecordViews
+    @Override
+    public Record getRecord(int x){
+        RecordViews.View record = views.get().get(x);
+        if (((int) FLAGS.getVolatile(flags, x) & PRESENT)==0){
+            if (((int) FLAGS.getAndBitwiseOr(flags, x, PRESENT) & PRESENT)==0){ num_vertices.incrementAndGet(); }
+        }
+        return record;
+    }
+
+    private boolean isPresent(int x){
+        return ((int) FLAGS.getVolatile(flags, x) & PRESENT)!=0;
+    }
+
+    @Override
+    public int getNumVertices(){
+        return num_vertices.get();
+    }
+
+    @Override
+    public int getTotalReplicas(){
+        int result = 0;
+        for (int x = 0; x<flags.length; x++){
+            if (!isPresent(x)){ continue; }
+            long[] chunk = replicas[x >>> chunk_bits];
+            int offset = (x & chunk_mask)*words;
+            int r = 0;
+            for (int w = 0; w<words; w++){ r += Long.bitCount(chunk[offset+w]); }
+            if (r>0){ result += r; }
+            else{ result++; }
+        }
+        return result;
+    }
+    @Override
+    public int getMachineLoad(int m) {
+        return machines_load_edges.get(m);
+    }
+
+    @Override
+    public void incrementMachineLoad(int m, int u, int v) {
+        machines_load_edges.increment(m);
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            if (original_ids!=null){ u = original_ids[u]; v = original_ids[v]; }
+            String line = (u<v) ? u+","+v+": "+m+"\n" : v+","+u+": "+m+"\n";
+            synchronized (out){ out.write(line); }
+        }
+    }
+
+    @Override
+    public void incrementMachineLoadVertices(int m) {
+        machines_load_vertices[m].incrementAndGet();
+    }
+
+    @Override
+    public int[] getMachines_load() {
+        int [] result = new int[GLOBALS.P];
+        machines_load_edges.snapshot(result);
+        return result;
+    }
+
+    @Override
+    public void snapshotMachineLoads(int[] result) {
+        machines_load_edges.snapshot(result);
+    }
+
+    @Override
+    public int[] getMachines_loadVertices() {
+        int [] result = new int[machines_load_vertices.length];
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            result[i] = machines_load_vertices[i].get();
+        }
+        return result;
+    }
+
+    @Override
+    public int getMinLoad() {
+        return machines_load_edges.getMin();
+    }
+
+    @Override
+    public int getMaxLoad() {
+        return machines_load_edges.getMax();
+    }
+
+    @Override
+    public LoadIndex getLoadIndex() {
+        return machines_load_edges.getIndex();
+    }
+
+    //one pass over the flags, the records are seen through a single view
+    @Override
+    public void forEachVertex(VertexVisitor visitor) {
+        ArrayRecord record = new ArrayRecord();
+        for (int x = 0; x<flags.length; x++){
+            if (!isPresent(x)){ continue; }
+            record.point(x);
+            record.id = x;
+            visitor.visit(x, record);
+        }
+    }
+
+    @Override
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices) {
+        machines_load_edges.restore(load_edges);
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            machines_load_vertices[i].set(load_vertices[i]);
+        }
+    }
+
+    @Override
+    public void flushOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            synchronized (out){ out.flush(); }
+        }
+    }
+
+    @Override
+    public void closeOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){ out.close(); }
+    }
+
+    //view of the record of one vertex; the lock is an atomic bit of the flags, the other fields are only touched by the lock holder
+    private class ArrayRecord extends RecordViews.View{
+        private long[] chunk;
+        private int offset; //of the replica words in chunk
+
+        @Override
+        void point(int x){
+            chunk = replicas[x >>> chunk_bits];
+            offset = (x & chunk_mask)*words;
+        }
+
+        @Override
+        public Iterator<Integer> getPartitions(){
+            final long[] chunk = this.chunk;
+            final int offset = this.offset;
+            return new Iterator<Integer>(){
+                private int w = -1;
+                private long bits = 0;
+
+                @Override
+                public boolean hasNext(){
+                    while (bits==0){
+                        if (w+1>=words){ return false; }
+                        w++;
+                        bits = chunk[offset+w];
+                    }
+                    return true;
+                }
+
+                @Override
+                public Integer next(){
+                    if (!hasNext()){ throw new NoSuchElementException(); }
+                    int m = 64*w + Long.numberOfTrailingZeros(bits);
+                    bits &= bits-1;
+                    return m;
+                }
+
+                @Override
+                public void remove(){
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void addPartition(int m){
+            if (m==-1){ System.out.println("ERRORE! record.addPartition(-1)"); System.exit(-1);}
+            chunk[offset+(m>>>6)] |= 1L << m;
+        }
+
+        @Override
+        public boolean hasReplicaInPartition(int m){
+            return (chunk[offset+(m>>>6)] & (1L << m))!=0;
+        }
+
+        @Override
+        public void getPartitionWords(long[] result){
+            for (int w = 0; w<result.length; w++){
+                result[w] = (w<words) ? chunk[offset+w] : 0;
+            }
+        }
+
+        @Override
+        public boolean getLock(){
+            return ((int) FLAGS.getAndBitwiseOr(flags, id, LOCKED) & LOCKED)==0;
+        }
+
+        @Override
+        public boolean releaseLock(){
+            int current = (int) FLAGS.getVolatile(flags, id);
+            return (current & LOCKED)!=0 && FLAGS.compareAndSet(flags, id, current, current+RELEASE);
+        }
+
+        @Override
+        public int getVersion(){
+            return (int) FLAGS.getVolatile(flags, id) & ~PRESENT;
+        }
+
+        //getRecord has set PRESENT before any lock is taken
+        @Override
+        public boolean getLock(int version){
+            return (version & LOCKED)==0 && FLAGS.compareAndSet(flags, id, version|PRESENT, version|PRESENT|LOCKED);
+        }
+
+        @Override
+        public int getReplicas(){
+            int result = 0;
+            for (int w = 0; w<words; w++){ result += Long.bitCount(chunk[offset+w]); }
+            return result;
+        }
+
+        @Override
+        public int getDegree() {
+            return degrees[id];
+        }
+
+        @Override
+        public void incrementDegree() {
+            degrees[id]++;
+        }
+
+        @Override
+        public void setDegree(int degree) {
+            degrees[id] = degree;
+        }
+    }
+}
@@ -25,44 +25,48 @@
 
 package partitioner.coordinated_state;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import partitioner.LoadIndex;
+import partitioner.LoadTracker;
 import partitioner.PartitionState;
+import partitioner.VertexVisitor;
 import application.Globals;
-import core.Edge;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import output.DatWriter;
 
 public class CoordinatedPartitionState implements PartitionState{
     private HashMap<Integer,CoordinatedRecord> record_map;
-    private AtomicInteger[] machines_load_edges;
+    private LoadTracker machines_load_edges;
     private AtomicInteger[] machines_load_vertices;
     private final Globals GLOBALS; 
-    int MAX_LOAD;
+    private final int[] original_ids; //original id of each vertex if the ids were remapped, null otherwise
     DatWriter out; //to print the final partition of each edge
 
     public CoordinatedPartitionState(Globals G) {
+        this(G, null);
+    }
+    
+    public CoordinatedPartitionState(Globals G, int[] original_ids) {
         this.GLOBALS = G;
+        this.original_ids = original_ids;
         record_map = new HashMap<Integer,CoordinatedRecord>();
-        machines_load_edges = new AtomicInteger[GLOBALS.P];
-        for (int i = 0; i<machines_load_edges.length;i++){ 
-            machines_load_edges[i] = new AtomicInteger(0); 
-        }        
+        machines_load_edges = new LoadTracker(GLOBALS.P, GLOBALS.SCORING.equalsIgnoreCase("sparse"));
         machines_load_vertices = new AtomicInteger[GLOBALS.P];
         for (int i = 0; i<machines_load_vertices.length;i++){ 
             machines_load_vertices[i] = new AtomicInteger(0); 
         }        
-        MAX_LOAD = 0;
         if (GLOBALS.OUTPUT_FILE_NAME!=null){
-            out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".edges");
+            out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".edges", GLOBALS.RESUME!=null || GLOBALS.PREVIOUS!=null); //appends to a checkpoint or previous run
         }
     }
     
-    public synchronized void incrementMachineLoadVertices(int m) {
+    @Override
+    public void incrementMachineLoadVertices(int m) {
         machines_load_vertices[m].incrementAndGet();
     }
     
+    @Override
     public int[] getMachines_loadVertices() {
         int [] result = new int[machines_load_vertices.length];
         for (int i = 0; i<machines_load_vertices.length;i++){ 
@@ -100,51 +104,75 @@ public class CoordinatedPartitionState implements PartitionState{
     }
 
     @Override
-    public synchronized int getMachineLoad(int m) {
-        return machines_load_edges[m].get();
+    public int getMachineLoad(int m) {
+        return machines_load_edges.get(m);
     }
 
     @Override
-    public synchronized void incrementMachineLoad(int m, Edge e) {
-        int new_value = machines_load_edges[m].incrementAndGet();
-        if (new_value>MAX_LOAD){
-            MAX_LOAD = new_value;
-        }
+    public void incrementMachineLoad(int m, int u, int v) {
+        machines_load_edges.increment(m);
         if (GLOBALS.OUTPUT_FILE_NAME!=null){
-            out.write(e+": "+m+"\n");
+            if (original_ids!=null){ u = original_ids[u]; v = original_ids[v]; }
+            String line = (u<v) ? u+","+v+": "+m+"\n" : v+","+u+": "+m+"\n";
+            synchronized (out){ out.write(line); }
         }
     }
     
     @Override
     public int[] getMachines_load() {
-        int [] result = new int[machines_load_edges.length];
-        for (int i = 0; i<machines_load_edges.length;i++){ 
-            result[i] = machines_load_edges[i].get();
-        }
+        int [] result = new int[GLOBALS.P];
+        machines_load_edges.snapshot(result);
         return result;
     }
+    
+    @Override
+    public void snapshotMachineLoads(int[] result) {
+        machines_load_edges.snapshot(result);
+    }
 
     @Override
-    public synchronized int getMinLoad() {
-        int MIN_LOAD = Integer.MAX_VALUE;
-        for (AtomicInteger load : machines_load_edges) {
-            int loadi = load.get();
-            if (loadi<MIN_LOAD){
-                MIN_LOAD = loadi;
-            }
-        }
-        return MIN_LOAD;
+    public int getMinLoad() {
+        return machines_load_edges.getMin();
     }
 
     @Override
     public int getMaxLoad() {
-        return MAX_LOAD;
+        return machines_load_edges.getMax();
     }
 
     @Override
-    public SortedSet<Integer> getVertexIds() {
-        if (GLOBALS.OUTPUT_FILE_NAME!=null){ out.close(); }        
-        return new TreeSet<Integer>(record_map.keySet());
+    public LoadIndex getLoadIndex() {
+        return machines_load_edges.getIndex();
+    }
+
+    //the ids are sorted as ints, the map is locked meanwhile
+    @Override
+    public synchronized void forEachVertex(VertexVisitor visitor) {
+        int[] ids = new int[record_map.size()];
+        int i = 0;
+        for (int x : record_map.keySet()){ ids[i++] = x; }
+        Arrays.sort(ids);
+        for (int x : ids){ visitor.visit(x, record_map.get(x)); }
+    }
+
+    @Override
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices) {
+        machines_load_edges.restore(load_edges);
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            machines_load_vertices[i].set(load_vertices[i]);
+        }
+    }
+    
+    @Override
+    public void flushOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            synchronized (out){ out.flush(); }
+        }
+    }
+    
+    @Override
+    public void closeOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){ out.close(); }
     }
     
 }
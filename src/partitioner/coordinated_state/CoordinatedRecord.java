@@ -26,56 +26,123 @@
 package partitioner.coordinated_state;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.TreeSet;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 import partitioner.Record;
 
 public class CoordinatedRecord implements Serializable,Record{
     
-    private TreeSet<Byte> partitions;   
-    private AtomicBoolean lock;
+    //replica set as a bitset: bit m of partitions is partition m < 64, the partitions from 64 on
+    //are kept in more (word w holds partitions 64*(w+1)..64*(w+1)+63), null until one is added
+    private long partitions;
+    private long[] more;
+    private AtomicInteger version; //the lock: odd while held, incremented again by the release
     private int degree;
     
     public CoordinatedRecord() {
-        partitions = new TreeSet<Byte>();
-        lock = new AtomicBoolean(true);
+        partitions = 0;
+        more = null;
+        version = new AtomicInteger(0);
         degree = 0;
     }
     
     @Override
-    public Iterator<Byte> getPartitions(){
-        return partitions.iterator();
+    public Iterator<Integer> getPartitions(){
+        return new Iterator<Integer>(){
+            private int w = 0; //current word, 0 is partitions
+            private long bits = partitions;
+            
+            @Override
+            public boolean hasNext(){
+                while (bits==0){
+                    if (more==null || w>=more.length){ return false; }
+                    bits = more[w++];
+                }
+                return true;
+            }
+            
+            @Override
+            public Integer next(){
+                if (!hasNext()){ throw new NoSuchElementException(); }
+                int m = 64*w + Long.numberOfTrailingZeros(bits);
+                bits &= bits-1;
+                return m;
+            }
+            
+            @Override
+            public void remove(){
+                throw new UnsupportedOperationException();
+            }
+        };
     }
     
     @Override
     public void addPartition(int m){
         if (m==-1){ System.out.println("ERRORE! record.addPartition(-1)"); System.exit(-1);}
-        partitions.add( (byte) m);
+        if (m<64){ partitions |= 1L << m; return; }
+        int w = (m>>>6)-1;
+        if (more==null){ more = new long[w+1]; }
+        else if (w>=more.length){ more = Arrays.copyOf(more, w+1); }
+        more[w] |= 1L << m;
     }
     
-    public void addAll(TreeSet<Byte> tree){
-        partitions.addAll(tree);
+    //bits: a replica set as returned by intersection
+    public void addAll(long[] bits){
+        for (int w = bits.length-1; w>=0; w--){
+            long word = bits[w];
+            while (word!=0){
+                addPartition(64*w + Long.numberOfTrailingZeros(word));
+                word &= word-1;
+            }
+        }
     }
     
     @Override
     public boolean hasReplicaInPartition(int m){
-        return partitions.contains((byte) m);
+        if (m<64){ return (partitions & (1L << m))!=0; }
+        int w = (m>>>6)-1;
+        return more!=null && w<more.length && (more[w] & (1L << m))!=0;
     }
     
     @Override
-    public synchronized boolean getLock(){
-        return lock.compareAndSet(true, false);
+    public void getPartitionWords(long[] words){
+        words[0] = partitions;
+        for (int w = 1; w<words.length; w++){
+            words[w] = (more!=null && w-1<more.length) ? more[w-1] : 0;
+        }
     }
     
     @Override
-    public synchronized boolean releaseLock(){
-        return lock.compareAndSet(false, true);
+    public boolean getLock(){
+        int current = version.get();
+        return (current & 1)==0 && version.compareAndSet(current, current+1);
+    }
+    
+    @Override
+    public boolean releaseLock(){
+        int current = version.get();
+        return (current & 1)!=0 && version.compareAndSet(current, current+1);
+    }
+    
+    @Override
+    public int getVersion(){
+        return version.get();
+    }
+    
+    @Override
+    public boolean getLock(int version){
+        return (version & 1)==0 && this.version.compareAndSet(version, version+1);
     }
     
     @Override
     public int getReplicas(){
-        return partitions.size();
+        int result = Long.bitCount(partitions);
+        if (more!=null){
+            for (long word : more){ result += Long.bitCount(word); }
+        }
+        return result;
     }
 
     @Override
@@ -87,10 +154,18 @@ public class CoordinatedRecord implements Serializable,Record{
     public void incrementDegree() {
         this.degree++;
     }
+
+    @Override
+    public void setDegree(int degree) {
+        this.degree = degree;
+    }
     
-    public static TreeSet<Byte> intersection(CoordinatedRecord x, CoordinatedRecord y){
-        TreeSet<Byte> result = (TreeSet<Byte>) x.partitions.clone();
-        result.retainAll(y.partitions);
+    //partitions replicating both x and y, as a bitset (word w holds partitions 64*w..64*w+63)
+    public static long[] intersection(CoordinatedRecord x, CoordinatedRecord y){
+        int words = 1 + Math.min(x.more==null ? 0 : x.more.length, y.more==null ? 0 : y.more.length);
+        long[] result = new long[words];
+        result[0] = x.partitions & y.partitions;
+        for (int w = 1; w<words; w++){ result[w] = x.more[w-1] & y.more[w-1]; }
         return result;
     }    
     
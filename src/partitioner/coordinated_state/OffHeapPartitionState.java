@@ -0,0 +1,372 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// OffHeapPartitionState.java: PartitionState whose vertex records live outside the java heap, optionally in a mapped file
+
+package partitioner.coordinated_state;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import partitioner.LoadIndex;
+import partitioner.LoadTracker;
+import partitioner.PartitionState;
+import partitioner.Record;
+import partitioner.VertexVisitor;
+import application.Globals;
+import output.DatWriter;
+
+public class OffHeapPartitionState implements PartitionState{
+
+    //SLOT LAYOUT (one per vertex id, native order)
+    //  int  degree
+    //  int  flags         bit 0: locked, bit 1: the vertex has been seen, bits 2-31: releases of the lock
+    //  long replicas[W]   bit m of word m/64 is set if the vertex is replicated in partition m
+    private static final int DEGREE = 0;
+    private static final int FLAGS = 4;
+    private static final int REPLICAS = 8;
+    private static final int LOCKED = 1;
+    private static final int PRESENT = 2;
+    private static final int RELEASE = 4-LOCKED; //clears the lock bit and counts the release
+    private static final int MAX_CHUNK_BYTES = 1<<30; //each chunk is a separate buffer or mapping
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int words; //replica words per slot
+    private final int slot_size;
+    private final int chunk_bits; //slots per chunk = 2^chunk_bits
+    private final int chunk_mask;
+    private final long vertices;
+    private final AtomicReferenceArray<ByteBuffer> chunks; //allocated (or mapped) on first use
+    private final FileChannel file; //backing file, null for anonymous direct memory
+    private final ThreadLocal<RecordViews> views;
+    private final AtomicInteger num_vertices;
+    private final LoadTracker machines_load_edges;
+    private final AtomicInteger[] machines_load_vertices;
+    private final Globals GLOBALS;
+    private final int[] original_ids; //original id of each vertex if the ids were remapped, null otherwise
+    private DatWriter out; //to print the final partition of each edge
+
+    //vertices: number of vertex ids, every id must be in 0..vertices-1
+    //state_file: file backing the records (its content is overwritten), null to use direct memory
+    public OffHeapPartitionState(Globals G, int vertices, int[] original_ids, String state_file) throws IOException {
+        this.GLOBALS = G;
+        this.original_ids = original_ids;
+        this.vertices = vertices;
+        words = (GLOBALS.P+63)/64;
+        slot_size = REPLICAS + 8*words;
+        int bits = 0;
+        while ((2L<<bits)*slot_size <= MAX_CHUNK_BYTES){ bits++; }
+        chunk_bits = bits;
+        chunk_mask = (1<<chunk_bits)-1;
+        chunks = new AtomicReferenceArray<ByteBuffer>((int) ((this.vertices + chunk_mask) >>> chunk_bits));
+        if (state_file!=null){
+            RandomAccessFile raf = new RandomAccessFile(state_file, "rw");
+            raf.setLength(0); //stale records would look like seen vertices
+            raf.setLength((long) vertices*slot_size);
+            file = raf.getChannel();
+        }
+        else { file = null; }
+        views = new ThreadLocal<RecordViews>(){
+            @Override
+            protected RecordViews initialValue(){
+                RecordViews.View[] ring = new RecordViews.View[RecordViews.SIZE];
+                for (int i = 0; i<ring.length; i++){ ring[i] = new OffHeapRecord(); }
+                return new RecordViews(ring);
+            }
+        };
+        num_vertices = new AtomicInteger(0);
+        machines_load_edges = new LoadTracker(GLOBALS.P, GLOBALS.SCORING.equalsIgnoreCase("sparse"));
+        machines_load_vertices = new AtomicInteger[GLOBALS.P];
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            machines_load_vertices[i] = new AtomicInteger(0);
+        }
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            out = new DatWriter(GLOBALS.OUTPUT_FILE_NAME+".edges", GLOBALS.RESUME!=null || GLOBALS.PREVIOUS!=null); //appends to a checkpoint or previous run
+        }
+    }
+
+    private ByteBuffer chunk(int c){
+        ByteBuffer chunk = chunks.get(c);
+        if (chunk==null){
+            long first = (long) c << chunk_bits;
+            long bytes = Math.min(1L<<chunk_bits, vertices-first)*slot_size;
+            if (file==null){ chunk = ByteBuffer.allocateDirect((int) bytes); }
+            else{
+                try {
+                    chunk = file.map(FileChannel.MapMode.READ_WRITE, first*slot_size, bytes);
+                } catch (IOException ex) {
+                    System.out.println("\nError: OffHeapPartitionState.chunk.\n\n");
+                    ex.printStackTrace();
+                    System.exit(-1);
+                }
+            }
+            chunk.order(ByteOrder.nativeOrder());
+            if (!chunks.compareAndSet(c, null, chunk)){ chunk = chunks.get(c); } //another thread got there first
+        }
+        return chunk;
+    }
+
+    //a view of the calling thread, see RecordViews
+    @Override
+    public Record getRecord(int x){
+        OffHeapRecord record = (OffHeapRecord) views.get().get(x);
+        int flags = (int) INT.getVolatile(record.buffer, record.offset+FLAGS);
+        if ((flags & PRESENT)==0){
+            flags = (int) INT.getAndBitwiseOr(record.buffer, record.offset+FLAGS, PRESENT);
+            if ((flags & PRESENT)==0){ num_vertices.incrementAndGet(); }
+        }
+        return record;
+    }
+
+    @Override
+    public int getNumVertices(){
+        return num_vertices.get();
+    }
+
+    @Override
+    public int getTotalReplicas(){
+        int result = 0;
+        for (int c = 0; c<chunks.length(); c++){
+            ByteBuffer chunk = chunks.get(c);
+            if (chunk==null){ continue; }
+            for (int offset = 0; offset<chunk.capacity(); offset+=slot_size){
+                if ((chunk.getInt(offset+FLAGS) & PRESENT)==0){ continue; }
+                int r = 0;
+                for (int w = 0; w<words; w++){ r += Long.bitCount(chunk.getLong(offset+REPLICAS+8*w)); }
+                if (r>0){ result += r; }
+                else{ result++; }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getMachineLoad(int m) {
+        return machines_load_edges.get(m);
+    }
+
+    @Override
+    public void incrementMachineLoad(int m, int u, int v) {
+        machines_load_edges.increment(m);
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            if (original_ids!=null){ u = original_ids[u]; v = original_ids[v]; }
+            String line = (u<v) ? u+","+v+": "+m+"\n" : v+","+u+": "+m+"\n";
+            synchronized (out){ out.write(line); }
+        }
+    }
+
+    @Override
+    public void incrementMachineLoadVertices(int m) {
+        machines_load_vertices[m].incrementAndGet();
+    }
+
+    @Override
+    public int[] getMachines_load() {
+        int [] result = new int[GLOBALS.P];
+        machines_load_edges.snapshot(result);
+        return result;
+    }
+
+    @Override
+    public void snapshotMachineLoads(int[] result) {
+        machines_load_edges.snapshot(result);
+    }
+
+    @Override
+    public int[] getMachines_loadVertices() {
+        int [] result = new int[machines_load_vertices.length];
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            result[i] = machines_load_vertices[i].get();
+        }
+        return result;
+    }
+
+    @Override
+    public int getMinLoad() {
+        return machines_load_edges.getMin();
+    }
+
+    @Override
+    public int getMaxLoad() {
+        return machines_load_edges.getMax();
+    }
+
+    @Override
+    public LoadIndex getLoadIndex() {
+        return machines_load_edges.getIndex();
+    }
+
+    //one pass over the allocated chunks, the records are seen through a single view
+    @Override
+    public void forEachVertex(VertexVisitor visitor) {
+        OffHeapRecord record = new OffHeapRecord();
+        for (int c = 0; c<chunks.length(); c++){
+            ByteBuffer chunk = chunks.get(c);
+            if (chunk==null){ continue; }
+            for (int offset = 0; offset<chunk.capacity(); offset+=slot_size){
+                if ((chunk.getInt(offset+FLAGS) & PRESENT)==0){ continue; }
+                int x = (c << chunk_bits) + offset/slot_size;
+                record.buffer = chunk;
+                record.offset = offset;
+                record.id = x;
+                visitor.visit(x, record);
+            }
+        }
+    }
+
+    @Override
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices) {
+        machines_load_edges.restore(load_edges);
+        for (int i = 0; i<machines_load_vertices.length;i++){
+            machines_load_vertices[i].set(load_vertices[i]);
+        }
+    }
+
+    @Override
+    public void flushOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){
+            synchronized (out){ out.flush(); }
+        }
+    }
+
+    @Override
+    public void closeOutput() {
+        if (GLOBALS.OUTPUT_FILE_NAME!=null){ out.close(); }
+    }
+
+    //view of one slot; the lock is an atomic bit of the flags, the other fields are only touched by the lock holder
+    private class OffHeapRecord extends RecordViews.View{
+        private ByteBuffer buffer;
+        private int offset;
+
+        @Override
+        void point(int x){
+            buffer = chunk(x >>> chunk_bits);
+            offset = (x & chunk_mask)*slot_size;
+        }
+
+        @Override
+        public Iterator<Integer> getPartitions(){
+            final ByteBuffer buffer = this.buffer;
+            final int offset = this.offset;
+            return new Iterator<Integer>(){
+                private int w = -1;
+                private long bits = 0;
+
+                @Override
+                public boolean hasNext(){
+                    while (bits==0){
+                        if (w+1>=words){ return false; }
+                        w++;
+                        bits = buffer.getLong(offset+REPLICAS+8*w);
+                    }
+                    return true;
+                }
+
+                @Override
+                public Integer next(){
+                    if (!hasNext()){ throw new NoSuchElementException(); }
+                    int m = 64*w + Long.numberOfTrailingZeros(bits);
+                    bits &= bits-1;
+                    return m;
+                }
+
+                @Override
+                public void remove(){
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void addPartition(int m){
+            if (m==-1){ System.out.println("ERRORE! record.addPartition(-1)"); System.exit(-1);}
+            int index = offset+REPLICAS+8*(m>>>6);
+            buffer.putLong(index, buffer.getLong(index) | (1L << m));
+        }
+
+        @Override
+        public boolean hasReplicaInPartition(int m){
+            return (buffer.getLong(offset+REPLICAS+8*(m>>>6)) & (1L << m))!=0;
+        }
+
+        @Override
+        public void getPartitionWords(long[] result){
+            for (int w = 0; w<result.length; w++){
+                result[w] = (w<words) ? buffer.getLong(offset+REPLICAS+8*w) : 0;
+            }
+        }
+
+        @Override
+        public boolean getLock(){
+            return ((int) INT.getAndBitwiseOr(buffer, offset+FLAGS, LOCKED) & LOCKED)==0;
+        }
+
+        @Override
+        public boolean releaseLock(){
+            int flags = (int) INT.getVolatile(buffer, offset+FLAGS);
+            return (flags & LOCKED)!=0 && INT.compareAndSet(buffer, offset+FLAGS, flags, flags+RELEASE);
+        }
+
+        @Override
+        public int getVersion(){
+            return (int) INT.getVolatile(buffer, offset+FLAGS) & ~PRESENT;
+        }
+
+        //getRecord has set PRESENT before any lock is taken
+        @Override
+        public boolean getLock(int version){
+            return (version & LOCKED)==0 && INT.compareAndSet(buffer, offset+FLAGS, version|PRESENT, version|PRESENT|LOCKED);
+        }
+
+        @Override
+        public int getReplicas(){
+            int result = 0;
+            for (int w = 0; w<words; w++){ result += Long.bitCount(buffer.getLong(offset+REPLICAS+8*w)); }
+            return result;
+        }
+
+        @Override
+        public int getDegree() {
+            return buffer.getInt(offset+DEGREE);
+        }
+
+        @Override
+        public void incrementDegree() {
+            buffer.putInt(offset+DEGREE, buffer.getInt(offset+DEGREE)+1);
+        }
+
+        @Override
+        public void setDegree(int degree) {
+            buffer.putInt(offset+DEGREE, degree);
+        }
+    }
+}
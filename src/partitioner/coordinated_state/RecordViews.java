@@ -0,0 +1,62 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// RecordViews.java: reusable record views of one thread, for the states that keep their records in primitive storage
+
+package partitioner.coordinated_state;
+
+import partitioner.Record;
+
+class RecordViews {
+
+    //getRecord points one of the SIZE views of the calling thread at the vertex instead of allocating a record,
+    //so a record stays valid until the same thread asks for SIZE other ones (a strategy holds two at a time);
+    //asking again for the vertex of the last view returns that view, so both records of a self loop are the
+    //same object and VertexLocks.unlock releases its lock once
+    static final int SIZE = 4;
+
+    //a record seen through the slot of a vertex
+    abstract static class View implements Record{
+        int id = -1;
+
+        abstract void point(int x);
+    }
+
+    private final View[] ring;
+    private int last;
+
+    RecordViews(View[] ring){
+        this.ring = ring;
+        this.last = 0;
+    }
+
+    View get(int x){
+        View view = ring[last];
+        if (view.id==x){ return view; }
+        last = (last+1) % ring.length;
+        view = ring[last];
+        view.point(x);
+        view.id = x;
+        return view;
+    }
+}
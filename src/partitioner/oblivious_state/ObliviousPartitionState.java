@@ -0,0 +1,269 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ObliviousPartitionState.java: PartitionState of a single partitioner thread, merged into the shared state every few edges
+
+package partitioner.oblivious_state;
+
+import java.util.ArrayList;
+import partitioner.LoadIndex;
+import partitioner.LoadTracker;
+import partitioner.PartitionState;
+import partitioner.Record;
+import partitioner.VertexVisitor;
+import partitioner.coordinated_state.CoordinatedRecord;
+import application.Globals;
+
+public class ObliviousPartitionState implements PartitionState{
+
+    //local records kept after a merge: a thread copies every vertex it touches, so without a bound the copies of
+    //T threads grow to T times the shared records; above this size the table is dropped at the merge (the records
+    //are clean then, and refreshed from the shared state anyway), so an epoch holds at most 2*SYNC_INTERVAL more
+    public static final int MAX_RECORDS = 1<<20;
+
+    //the thread scores against its own copy of the records and loads, nobody else touches them
+    //every SYNC_INTERVAL edges the records changed since the last merge are added to the shared state (replicas are
+    //united, degree increments summed) and the epoch moves on: each local record is refreshed from the shared one
+    //the first time it is used in the new epoch, the local loads are reset to the shared ones
+    //the shared state also counts the edge loads and writes the .edges file as the edges are assigned
+    private final Globals GLOBALS;
+    private final PartitionState global;
+    private LocalRecord[] records; //open addressing on the vertex id, at most half full
+    private int size;
+    private final ArrayList<LocalRecord> dirty; //records used since the last merge
+    private final LoadTracker machines_load_edges; //local view of the edge loads
+    private final int[] loads; //scratch for the shared loads
+    private final long[] words; //scratch for the replica bitsets
+    private final long[] local_words;
+    private int epoch;
+    private long edges; //assigned since the last merge
+    private boolean pending; //a merge is due, done at the next getRecord, before the next edge touches any record
+    private long syncs;
+
+    //global: the state shared by all the threads, which holds the result
+    public ObliviousPartitionState(Globals G, PartitionState global){
+        this.GLOBALS = G;
+        this.global = global;
+        clearRecords();
+        dirty = new ArrayList<LocalRecord>();
+        machines_load_edges = new LoadTracker(GLOBALS.P, GLOBALS.SCORING.equalsIgnoreCase("sparse"));
+        loads = new int[GLOBALS.P];
+        words = new long[(GLOBALS.P+63)/64];
+        local_words = new long[(GLOBALS.P+63)/64];
+        global.snapshotMachineLoads(loads);
+        machines_load_edges.restore(loads);
+        epoch = 0;
+        edges = 0;
+        pending = false;
+        syncs = 0;
+    }
+
+    @Override
+    public Record getRecord(int x){
+        if (pending){ sync(); }
+        LocalRecord record = lookup(x);
+        if (record.epoch!=epoch){ refresh(record); }
+        if (!record.dirty){
+            record.dirty = true;
+            dirty.add(record);
+        }
+        return record;
+    }
+
+    private void clearRecords(){
+        records = new LocalRecord[1<<10];
+        size = 0;
+    }
+
+    private LocalRecord lookup(int x){
+        int mask = records.length-1;
+        int i = mix(x) & mask;
+        while (records[i]!=null){
+            if (records[i].id==x){ return records[i]; }
+            i = (i+1) & mask;
+        }
+        LocalRecord record = new LocalRecord(x);
+        records[i] = record;
+        if (++size > records.length/2){ grow(); }
+        return record;
+    }
+
+    private void grow(){
+        LocalRecord[] old = records;
+        records = new LocalRecord[2*old.length];
+        int mask = records.length-1;
+        for (LocalRecord record : old){
+            if (record==null){ continue; }
+            int i = mix(record.id) & mask;
+            while (records[i]!=null){ i = (i+1) & mask; }
+            records[i] = record;
+        }
+    }
+
+    private static int mix(int x){
+        int h = x * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void refresh(LocalRecord record){
+        Record shared = global.getRecord(record.id);
+        shared.getPartitionWords(words);
+        record.addAll(words);
+        record.setDegree(shared.getDegree());
+        record.base_degree = record.getDegree();
+        record.epoch = epoch;
+    }
+
+    //adds the local changes to the shared state and starts a new epoch, called by the owner thread
+    //(and once more by the partitioner when the thread is done)
+    public void sync(){
+        synchronized (global){
+            for (LocalRecord record : dirty){
+                Record shared = global.getRecord(record.id);
+                shared.getPartitionWords(words);
+                record.getPartitionWords(local_words);
+                for (int w = 0; w<words.length; w++){
+                    long added = local_words[w] & ~words[w];
+                    while (added!=0){
+                        int m = 64*w + Long.numberOfTrailingZeros(added);
+                        added &= added-1;
+                        shared.addPartition(m);
+                        global.incrementMachineLoadVertices(m);
+                    }
+                }
+                shared.setDegree(shared.getDegree() + record.getDegree() - record.base_degree);
+                record.dirty = false;
+            }
+        }
+        dirty.clear();
+        if (size>MAX_RECORDS){ clearRecords(); }
+        epoch++;
+        edges = 0;
+        pending = false;
+        syncs++;
+        global.snapshotMachineLoads(loads);
+        machines_load_edges.restore(loads);
+    }
+
+    public long getSyncs(){
+        return syncs;
+    }
+
+    @Override
+    public int getMachineLoad(int m){
+        return machines_load_edges.get(m);
+    }
+
+    @Override
+    public void incrementMachineLoad(int m, int u, int v){
+        machines_load_edges.increment(m);
+        global.incrementMachineLoad(m, u, v);
+        edges++;
+        if (GLOBALS.SYNC_INTERVAL>0 && edges>=GLOBALS.SYNC_INTERVAL){ pending = true; }
+    }
+
+    //the shared state counts a replica when it is merged, a vertex placed in the same partition by two threads counts once
+    @Override
+    public void incrementMachineLoadVertices(int m){}
+
+    @Override
+    public int getMinLoad(){
+        return machines_load_edges.getMin();
+    }
+
+    @Override
+    public int getMaxLoad(){
+        return machines_load_edges.getMax();
+    }
+
+    @Override
+    public LoadIndex getLoadIndex(){
+        return machines_load_edges.getIndex();
+    }
+
+    @Override
+    public int[] getMachines_load(){
+        int [] result = new int[GLOBALS.P];
+        machines_load_edges.snapshot(result);
+        return result;
+    }
+
+    @Override
+    public void snapshotMachineLoads(int[] result){
+        machines_load_edges.snapshot(result);
+    }
+
+    @Override
+    public int[] getMachines_loadVertices(){
+        return global.getMachines_loadVertices();
+    }
+
+    @Override
+    public int getTotalReplicas(){
+        return global.getTotalReplicas();
+    }
+
+    @Override
+    public int getNumVertices(){
+        return global.getNumVertices();
+    }
+
+    @Override
+    public void forEachVertex(VertexVisitor visitor){
+        global.forEachVertex(visitor);
+    }
+
+    //the local records are merged first (they count their replicas), then the shared state takes the given loads
+    @Override
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices){
+        sync();
+        global.restoreMachineLoads(load_edges, load_vertices);
+        global.snapshotMachineLoads(loads);
+        machines_load_edges.restore(loads);
+    }
+
+    @Override
+    public void flushOutput(){
+        global.flushOutput();
+    }
+
+    @Override
+    public void closeOutput(){
+        global.closeOutput();
+    }
+
+    private static class LocalRecord extends CoordinatedRecord{
+        private static final long serialVersionUID = 1L;
+        final int id;
+        int epoch; //epoch of the last refresh from the shared record
+        int base_degree; //degree at the last refresh, the difference is merged
+        boolean dirty;
+
+        LocalRecord(int id){
+            super();
+            this.id = id;
+            this.epoch = -1;
+            this.dirty = false;
+        }
+    }
+}
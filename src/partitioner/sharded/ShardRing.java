@@ -0,0 +1,77 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ShardRing.java: single-producer single-consumer ring of messages (arrays of longs) from one shard worker to another
+
+package partitioner.sharded;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ShardRing {
+
+    private static final int STRIDE = 8; //longs per 64-byte cache line, head and tail on separate lines
+    private static final int HEAD = 0; //next slot to read, written by the consumer only
+    private static final int TAIL = STRIDE; //next slot to write, written by the producer only
+
+    //each message takes its length followed by its longs
+    private final long[] buffer;
+    private final int mask;
+    private final AtomicLongArray positions;
+    private long head_cache; //last head seen by the producer
+    private long tail_cache; //last tail seen by the consumer
+
+    //capacity: longs, a power of 2
+    public ShardRing(int capacity){
+        buffer = new long[capacity];
+        mask = capacity-1;
+        positions = new AtomicLongArray(2*STRIDE);
+        head_cache = 0;
+        tail_cache = 0;
+    }
+
+    //producer side: false if the message does not fit, nothing is written then
+    public boolean offer(long[] message, int offset, int length){
+        long tail = positions.get(TAIL);
+        if (tail+length+1-head_cache > buffer.length){
+            head_cache = positions.get(HEAD);
+            if (tail+length+1-head_cache > buffer.length){ return false; }
+        }
+        buffer[(int) (tail & mask)] = length;
+        for (int i = 0; i<length; i++){ buffer[(int) ((tail+1+i) & mask)] = message[offset+i]; }
+        positions.lazySet(TAIL, tail+length+1); //publishes the message
+        return true;
+    }
+
+    //consumer side: copies the next message into message and returns its length, 0 if the ring is empty
+    public int poll(long[] message){
+        long head = positions.get(HEAD);
+        if (head==tail_cache){
+            tail_cache = positions.get(TAIL);
+            if (head==tail_cache){ return 0; }
+        }
+        int length = (int) buffer[(int) (head & mask)];
+        for (int i = 0; i<length; i++){ message[i] = buffer[(int) ((head+1+i) & mask)]; }
+        positions.lazySet(HEAD, head+length+1); //frees the slots
+        return length;
+    }
+}
@@ -0,0 +1,259 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ShardState.java: partition state seen by a shard worker, where the endpoint owned by another worker is the snapshot it sent
+
+package partitioner.sharded;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import partitioner.LoadIndex;
+import partitioner.PartitionState;
+import partitioner.Record;
+import partitioner.VertexVisitor;
+
+class ShardState implements PartitionState{
+
+    private final PartitionState state;
+    private final RemoteRecord remote;
+    private boolean has_remote;
+    private int remote_id;
+
+    ShardState(PartitionState state, int words){
+        this.state = state;
+        this.remote = new RemoteRecord(words);
+        this.has_remote = false;
+    }
+
+    //the next step sees vertex x as the snapshot in message[offset..offset+words-1]
+    RemoteRecord setRemote(int x, int degree, long[] message, int offset){
+        has_remote = true;
+        remote_id = x;
+        remote.degree = degree;
+        remote.base_degree = degree;
+        System.arraycopy(message, offset, remote.words, 0, remote.words.length);
+        remote.added = -1;
+        remote.uncounted = false;
+        return remote;
+    }
+
+    void clearRemote(){
+        has_remote = false;
+    }
+
+    @Override
+    public Record getRecord(int x){
+        if (has_remote && x==remote_id){ return remote; }
+        return state.getRecord(x);
+    }
+
+    //the strategies count a new replica right after adding it: for the snapshot the owner counts it instead,
+    //when the replica reaches the real record (see ShardWorker)
+    @Override
+    public void incrementMachineLoadVertices(int m){
+        if (has_remote && remote.uncounted && remote.added==m){ remote.uncounted = false; return; }
+        state.incrementMachineLoadVertices(m);
+    }
+
+    @Override
+    public int getMachineLoad(int m){
+        return state.getMachineLoad(m);
+    }
+
+    @Override
+    public void incrementMachineLoad(int m, int u, int v){
+        state.incrementMachineLoad(m, u, v);
+    }
+
+    @Override
+    public int getMinLoad(){
+        return state.getMinLoad();
+    }
+
+    @Override
+    public int getMaxLoad(){
+        return state.getMaxLoad();
+    }
+
+    @Override
+    public LoadIndex getLoadIndex(){
+        return state.getLoadIndex();
+    }
+
+    @Override
+    public int[] getMachines_load(){
+        return state.getMachines_load();
+    }
+
+    @Override
+    public void snapshotMachineLoads(int[] result){
+        state.snapshotMachineLoads(result);
+    }
+
+    @Override
+    public int[] getMachines_loadVertices(){
+        return state.getMachines_loadVertices();
+    }
+
+    @Override
+    public int getTotalReplicas(){
+        return state.getTotalReplicas();
+    }
+
+    @Override
+    public int getNumVertices(){
+        return state.getNumVertices();
+    }
+
+    @Override
+    public void forEachVertex(VertexVisitor visitor){
+        state.forEachVertex(visitor);
+    }
+
+    @Override
+    public void restoreMachineLoads(int[] load_edges, int[] load_vertices){
+        state.restoreMachineLoads(load_edges, load_vertices);
+    }
+
+    @Override
+    public void flushOutput(){
+        state.flushOutput();
+    }
+
+    @Override
+    public void closeOutput(){
+        state.closeOutput();
+    }
+
+    //copy of the replicas and degree of a vertex owned by another worker, the changes made by the strategy are
+    //sent back to the owner
+    static class RemoteRecord implements Record{
+        final long[] words;
+        int degree;
+        int base_degree; //degree of the snapshot, the difference is sent back
+        int added; //partition added by the step, -1 if none
+        boolean uncounted; //the replica was added and not counted yet, see incrementMachineLoadVertices
+
+        RemoteRecord(int words){
+            this.words = new long[words];
+        }
+
+        @Override
+        public Iterator<Integer> getPartitions(){
+            return new Iterator<Integer>(){
+                private int w = -1;
+                private long bits = 0;
+
+                @Override
+                public boolean hasNext(){
+                    while (bits==0){
+                        if (w+1>=words.length){ return false; }
+                        w++;
+                        bits = words[w];
+                    }
+                    return true;
+                }
+
+                @Override
+                public Integer next(){
+                    if (!hasNext()){ throw new NoSuchElementException(); }
+                    int m = 64*w + Long.numberOfTrailingZeros(bits);
+                    bits &= bits-1;
+                    return m;
+                }
+
+                @Override
+                public void remove(){
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        @Override
+        public void addPartition(int m){
+            words[m>>>6] |= 1L << m;
+            added = m;
+            uncounted = true;
+        }
+
+        @Override
+        public boolean hasReplicaInPartition(int m){
+            return (words[m>>>6] & (1L << m))!=0;
+        }
+
+        @Override
+        public void getPartitionWords(long[] result){
+            for (int w = 0; w<result.length; w++){
+                result[w] = (w<words.length) ? words[w] : 0;
+            }
+        }
+
+        //only the worker that received the snapshot sees it
+        @Override
+        public boolean getLock(){
+            return true;
+        }
+
+        @Override
+        public boolean releaseLock(){
+            return true;
+        }
+
+        @Override
+        public int getVersion(){
+            return 0;
+        }
+
+        @Override
+        public boolean getLock(int version){
+            return true;
+        }
+
+        @Override
+        public int getReplicas(){
+            int result = 0;
+            for (long word : words){ result += Long.bitCount(word); }
+            return result;
+        }
+
+        @Override
+        public int getDegree(){
+            return degree;
+        }
+
+        @Override
+        public void incrementDegree(){
+            degree++;
+        }
+
+        @Override
+        public void setDegree(int degree){
+            this.degree = degree;
+        }
+
+        //the owner adds it to the degree of the real record, which may have grown meanwhile
+        int getDegreeChange(){
+            return degree-base_degree;
+        }
+    }
+}
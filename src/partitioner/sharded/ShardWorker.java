@@ -0,0 +1,298 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ShardWorker.java: partitioner thread that owns the records of a hash range of vertices and exchanges messages with the other owners
+
+package partitioner.sharded;
+
+import core.Edge;
+import core.EdgeBuffer;
+import core.EdgeShuffle;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import partitioner.PartitionState;
+import partitioner.PartitionStrategy;
+import partitioner.Record;
+
+public class ShardWorker implements Runnable{
+
+    public static final int RING_SIZE = 1<<16; //longs per ring
+    public static final int READ_BATCH = 256; //edges read from the dataset between two drains of the rings
+    public static final int DRAIN_BATCH = 256; //messages taken from a ring at a time
+    public static final int SPINS = 64; //idle iterations before yielding
+
+    //MESSAGES (header long, edge long, payload)
+    //  EDGE   the edge, sent to the owner of one of its endpoints
+    //  SCORE  the edge and the replicas of the endpoint owned by the sender (header: degree, 1 if the endpoint is v)
+    //         sent to the owner of the other endpoint, which runs the strategy
+    //  REPLY  the partition of the edge and the degree change for the endpoint owned by the receiver
+    //         (header: partition or -1, 1 if the degree changed; payload: the change, only if the flag is 1)
+    //only plain longs cross the rings, so the same protocol could cross process boundaries
+    private static final int EDGE = 0;
+    private static final int SCORE = 1;
+    private static final int REPLY = 2;
+
+    private final int id;
+    private final int shards;
+    private final EdgeBuffer dataset;
+    private final int[] block_order; //if not null, blocks of EdgeShuffle.BLOCK_SIZE edges are taken in this order
+    private final AtomicInteger next_block; //shared among the workers that use block_order
+    private final PartitionState state;
+    private final ShardState view;
+    private final PartitionStrategy algorithm;
+    private final ShardRing[] inbox; //inbox[w]: messages from worker w, null for this worker
+    private final Outbox[] outbox; //outbox[w]: messages to worker w, null for this worker
+    private final AtomicLong completed; //edges whose every message has been handled, shared by the workers
+    private final int words;
+    private final long[] in_message;
+    private final long[] out_message;
+    private final long[] replicas;
+    private long position; //next edge to read
+    private long limit; //end of the current range (excluded)
+    private boolean reading;
+    private long local_completed; //not yet added to completed
+    private long local_edges; //edges with both endpoints owned by this worker
+    private long sent;
+
+    //rings[from][to], shared by all the workers
+    public ShardWorker(int id, ShardRing[][] rings, EdgeBuffer dataset, long begin, long end, int[] block_order, AtomicInteger next_block,
+            PartitionState state, PartitionStrategy algorithm, AtomicLong completed, int P){
+        this.id = id;
+        this.shards = rings.length;
+        this.dataset = dataset;
+        this.position = begin;
+        this.limit = end;
+        this.block_order = block_order;
+        this.next_block = next_block;
+        this.state = state;
+        this.algorithm = algorithm;
+        this.completed = completed;
+        this.words = (P+63)/64;
+        this.view = new ShardState(state, words);
+        this.in_message = new long[2+words];
+        this.out_message = new long[2+words];
+        this.replicas = new long[words];
+        inbox = new ShardRing[shards];
+        outbox = new Outbox[shards];
+        for (int w = 0; w<shards; w++){
+            if (w==id){ continue; }
+            inbox[w] = rings[w][id];
+            outbox[w] = new Outbox(rings[id][w]);
+        }
+        reading = true;
+    }
+
+    public static int owner(int x, int shards){
+        int h = x * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards);
+    }
+
+    //the worker stops when every edge of the dataset is completed: no message can be in flight then
+    @Override
+    public void run(){
+        long total = dataset.size();
+        int idle = 0;
+        while (true){
+            boolean progress = flush();
+            progress |= drain();
+            if (reading && !backlog()){ progress |= read(); }
+            if (local_completed>0){
+                completed.addAndGet(local_completed);
+                local_completed = 0;
+            }
+            if (!reading && completed.get()==total){ return; }
+            if (progress){ idle = 0; }
+            else if (idle<SPINS){ idle++; Thread.onSpinWait(); }
+            else { Thread.yield(); }
+        }
+    }
+
+    private boolean read(){
+        if (position==limit){
+            int b;
+            if (block_order==null || (b = next_block.getAndIncrement())>=block_order.length){
+                reading = false;
+                return false;
+            }
+            position = (long) block_order[b] * EdgeShuffle.BLOCK_SIZE;
+            limit = Math.min(position+EdgeShuffle.BLOCK_SIZE, dataset.size());
+        }
+        long stop = Math.min(position+READ_BATCH, limit);
+        for (; position<stop; position++){ route(dataset.get(position)); }
+        return true;
+    }
+
+    private void route(long e){
+        int u = Edge.getU(e);
+        int v = Edge.getV(e);
+        int owner_u = owner(u, shards);
+        int owner_v = owner(v, shards);
+        if (owner_u==id && owner_v==id){
+            algorithm.performStep(u, v, state); //both records are ours, no lock needed
+            local_edges++;
+            local_completed++;
+        }
+        else if (owner_u==id){ score(u, 0, e, owner_v); }
+        else if (owner_v==id){ score(v, 1, e, owner_u); }
+        else {
+            out_message[0] = header(EDGE, 0, 0);
+            out_message[1] = e;
+            send(owner_u, 2);
+        }
+    }
+
+    //sends the replicas and degree of x, the endpoint we own, to the owner of the other endpoint
+    private void score(int x, int which, long e, int to){
+        Record record = state.getRecord(x);
+        out_message[0] = header(SCORE, which, record.getDegree());
+        out_message[1] = e;
+        record.getPartitionWords(replicas);
+        System.arraycopy(replicas, 0, out_message, 2, words);
+        send(to, 2+words);
+    }
+
+    private void handle(long[] message){
+        int type = (int) (message[0] >>> 56);
+        int flag = (int) ((message[0] >>> 48) & 0xFF);
+        int value = (int) message[0];
+        long e = message[1];
+        if (type==EDGE){ route(e); }
+        else if (type==SCORE){
+            int u = Edge.getU(e);
+            int v = Edge.getV(e);
+            int x = (flag==0) ? u : v;
+            ShardState.RemoteRecord remote = view.setRemote(x, value, message, 2);
+            algorithm.performStep(u, v, view);
+            view.clearRemote();
+            int change = remote.getDegreeChange();
+            if (remote.added>=0 || change!=0){
+                out_message[0] = header(REPLY, (change!=0) ? 1 : 0, remote.added);
+                out_message[1] = e;
+                out_message[2] = change;
+                send(owner(x, shards), (change!=0) ? 3 : 2);
+            }
+            else { local_completed++; }
+        }
+        else {
+            int u = Edge.getU(e);
+            int x = (owner(u, shards)==id) ? u : Edge.getV(e);
+            Record record = state.getRecord(x);
+            if (value>=0 && !record.hasReplicaInPartition(value)){
+                record.addPartition(value);
+                state.incrementMachineLoadVertices(value);
+            }
+            if (flag==1){ record.setDegree(record.getDegree() + (int) message[2]); }
+            local_completed++;
+        }
+    }
+
+    private static long header(int type, int flag, int value){
+        return ((long) type << 56) | ((long) flag << 48) | (value & 0xFFFFFFFFL);
+    }
+
+    private boolean drain(){
+        boolean progress = false;
+        for (int w = 0; w<shards; w++){
+            if (w==id){ continue; }
+            for (int k = 0; k<DRAIN_BATCH; k++){
+                if (inbox[w].poll(in_message)==0){ break; }
+                handle(in_message);
+                progress = true;
+            }
+        }
+        return progress;
+    }
+
+    private void send(int to, int length){
+        outbox[to].send(out_message, length);
+        sent++;
+    }
+
+    private boolean flush(){
+        boolean progress = false;
+        for (int w = 0; w<shards; w++){
+            if (w!=id){ progress |= outbox[w].flush(); }
+        }
+        return progress;
+    }
+
+    //new edges are read only once the messages that did not fit in a ring have been delivered
+    private boolean backlog(){
+        for (int w = 0; w<shards; w++){
+            if (w!=id && !outbox[w].isEmpty()){ return true; }
+        }
+        return false;
+    }
+
+    public long getSent(){
+        return sent;
+    }
+
+    public long getLocalEdges(){
+        return local_edges;
+    }
+
+    //a full ring never blocks the sender, which would deadlock two workers sending to each other:
+    //the messages wait in a local queue, in order, until the ring has room
+    private static class Outbox{
+        private final ShardRing ring;
+        private long[] pending;
+        private int read;
+        private int write;
+
+        Outbox(ShardRing ring){
+            this.ring = ring;
+            this.pending = new long[1024];
+        }
+
+        void send(long[] message, int length){
+            if (read==write && ring.offer(message, 0, length)){ return; }
+            if (write+length+1>pending.length){
+                long[] next = (write-read+length+1>pending.length/2) ? new long[2*pending.length+length+1] : pending;
+                System.arraycopy(pending, read, next, 0, write-read);
+                write -= read;
+                read = 0;
+                pending = next;
+            }
+            pending[write] = length;
+            System.arraycopy(message, 0, pending, write+1, length);
+            write += length+1;
+        }
+
+        boolean flush(){
+            boolean progress = false;
+            while (read<write){
+                int length = (int) pending[read];
+                if (!ring.offer(pending, read+1, length)){ break; }
+                read += length+1;
+                progress = true;
+            }
+            if (read==write){ read = 0; write = 0; }
+            return progress;
+        }
+
+        boolean isEmpty(){
+            return read==write;
+        }
+    }
+}
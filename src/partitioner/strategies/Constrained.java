@@ -26,17 +26,21 @@
 package partitioner.strategies;
 
 import core.Edge;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Random;
+import partitioner.strategies.utils.Candidates;
+import partitioner.DeferredStrategy;
+import partitioner.HashedStrategy;
 import partitioner.PartitionState;
 import partitioner.PartitionStrategy;
 import partitioner.Record;
-import partitioner.coordinated_state.CoordinatedPartitionState;
+import partitioner.VertexLocks;
 import partitioner.strategies.utils.Pds;
 import application.Globals;
 
-public class Constrained implements PartitionStrategy{
+public class Constrained implements PartitionStrategy, DeferredStrategy, HashedStrategy{
     
     public static final int MAX_SHRINK = 100;
     double seed;
@@ -44,13 +48,27 @@ public class Constrained implements PartitionStrategy{
     int partitions;
     int nrows, ncols;
     LinkedList<Integer>[] constraint_graph;
+    public static final long MAX_PAIRS = 1<<22; //pairs of shards of the intersection table, above it is not built
+    int[][] constraints; //sorted constraint set of each shard
+    //constrained set of every pair of shards s<=t (the set of (t,s) is the same), packed: the set of (s,t) is
+    //intersection[intersection_start[k]..intersection_start[k+1]-1] with k = pair(s,t), null above MAX_PAIRS pairs
+    int[] intersection_start;
+    int[] intersection;
     private Globals GLOBALS;
+    private final VertexLocks locks;
+    private final ThreadLocal<Candidates> buffers;
     
     public Constrained(Globals G){
+        this(G, new VertexLocks());
+    }
+    
+    public Constrained(Globals G, VertexLocks locks){
         this.seed = Math.random();
         Random r = new Random(); 
         shrink = r.nextInt(MAX_SHRINK);
         this.GLOBALS = G;
+        this.locks = locks;
+        this.buffers = Candidates.perThread(G.P);
         this.partitions = this.GLOBALS.P;
         this.constraint_graph = new LinkedList[this.partitions];
         if (this.GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("grid")) {
@@ -58,6 +76,47 @@ public class Constrained implements PartitionStrategy{
         } else if (this.GLOBALS.PARTITION_STRATEGY.equalsIgnoreCase("pds")) {
             make_pds_constraint();
         }
+        make_intersection_table();
+    }
+    
+    //the constrained set depends only on the two shards, so all of them are computed here, merging the sorted lists;
+    //the table takes O(P^2) memory, with more than MAX_PAIRS pairs each edge merges the two lists instead
+    private void make_intersection_table() {
+        constraints = new int[partitions][];
+        for (int i = 0; i < partitions; i++) {
+            constraints[i] = new int[constraint_graph[i].size()];
+            int j = 0;
+            for (int m : constraint_graph[i]){ constraints[i][j++] = m; }
+        }
+        long pairs = (long) partitions*(partitions+1)/2;
+        if (pairs>MAX_PAIRS){ return; }
+        intersection_start = new int[(int) pairs+1];
+        int[] result = new int[partitions];
+        int size = 0;
+        for (int s = 0; s < partitions; s++) {
+            for (int t = s; t < partitions; t++) {
+                int[] a = constraints[s];
+                int[] b = constraints[t];
+                int i = 0;
+                int j = 0;
+                while (i<a.length && j<b.length){
+                    if (a[i]<b[j]){ i++; }
+                    else if (b[j]<a[i]){ j++; }
+                    else {
+                        if (size==result.length){ result = Arrays.copyOf(result, 2*result.length); }
+                        result[size++] = a[i];
+                        i++; j++;
+                    }
+                }
+                intersection_start[pair(s,t)+1] = size;
+            }
+        }
+        intersection = Arrays.copyOf(result, size);
+    }
+    
+    //index of the pair s<=t in the table: the rows s'<s take P-s' entries each
+    private int pair(int s, int t) {
+        return (int) ((long) s*partitions - (long) s*(s-1)/2 + (t-s));
     }
     
     private void make_grid_constraint() {
@@ -136,70 +195,107 @@ public class Constrained implements PartitionStrategy{
         return p;
     }    
     
+    @Override
+    public double getHashSeed() {
+        return seed;
+    }
+    
+    @Override
+    public int getHashShrink() {
+        return shrink;
+    }
+    
+    @Override
+    public void setHashParameters(double seed, int shrink) {
+        this.seed = seed;
+        this.shrink = shrink;
+    }
+    
     @Override
     public void performStep(Edge e, PartitionState state) {
-        int P = GLOBALS.P;
-        int u = e.getU();
-        int v = e.getV();
-        
+        performStep(e.getU(), e.getV(), state);
+    }
+
+    @Override
+    public void performStep(int u, int v, PartitionState state) {
         Record u_record = state.getRecord(u);
         Record v_record = state.getRecord(v);
         
         //*** ASK FOR LOCK
-        int sleep = 2; while (!u_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2);}
-        sleep = 2; while (!v_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2); 
-        if (sleep>GLOBALS.SLEEP_LIMIT){u_record.releaseLock(); performStep(e,state); return;} //TO AVOID DEADLOCK
-        }
+        locks.lock(u, u_record, v, v_record);
         //*** LOCK TAKEN
         
+        int machine_id = pickPartition(u, v, state);
+        
+        //UPDATE EDGES
+        state.incrementMachineLoad(machine_id,u,v);
+        
+        //UPDATE RECORDS
+        //1-UPDATE RECORDS AND THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAIN
+        if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+          
+        //*** RELEASE LOCK
+        locks.unlock(u_record, v_record);
+    }
+    
+    @Override
+    public int assign(int u, int v, PartitionState state) {
+        int machine_id = pickPartition(u, v, state);
+        state.incrementMachineLoad(machine_id,u,v);
+        return machine_id;
+    }
+    
+    //the least loaded partition of the constrained set of the two shards, reads only the edge loads
+    private int pickPartition(int u, int v, PartitionState state) {
+        int P = GLOBALS.P;
+        
         int shard_u = Math.abs((int) ( (int) u*seed*shrink) % P);  
         int shard_v = Math.abs((int) ( (int) v*seed*shrink) % P);  
         
-        LinkedList<Integer> costrained_set = (LinkedList<Integer>) constraint_graph[shard_u].clone();
-        costrained_set.retainAll(constraint_graph[shard_v]);
-        
         //CASE 1: GREEDY ASSIGNMENT
-        LinkedList<Integer> candidates = new LinkedList<Integer>();
+        int s = Math.min(shard_u, shard_v);
+        int t = Math.max(shard_u, shard_v);
+        Candidates candidates = buffers.get();
+        candidates.clear();
         int min_load = Integer.MAX_VALUE;
-        for (int m : costrained_set){
-            int load = state.getMachineLoad(m);
-            if (load<min_load){
-                candidates.clear();
-                min_load = load;
-                candidates.add(m);
+        if (intersection_start!=null){
+            int k = pair(s,t);
+            for (int i = intersection_start[k]; i<intersection_start[k+1]; i++){
+                min_load = offer(intersection[i], min_load, candidates, state);
             }
-            if (load == min_load){
-                candidates.add(m);
+        }
+        else{
+            int[] a = constraints[s];
+            int[] b = constraints[t];
+            int i = 0;
+            int j = 0;
+            while (i<a.length && j<b.length){
+                if (a[i]<b[j]){ i++; }
+                else if (b[j]<a[i]){ j++; }
+                else { min_load = offer(a[i], min_load, candidates, state); i++; j++; }
             }
         }
         //*** PICK A RANDOM ELEMENT FROM CANDIDATES
-        Random r = new Random(); 
-        int choice = r.nextInt(candidates.size());
-        int machine_id = candidates.get(choice);      
+        int machine_id = candidates.pick();
         
         //CASE 2 : RANDOM ASSIGNMENT
 //        Random r = new Random(); 
 //        int choice = r.nextInt(costrained_set.size());
 //        int machine_id = costrained_set.get(choice);
         
-        //UPDATE EDGES
-        state.incrementMachineLoad(machine_id,e);
-        
-        //UPDATE RECORDS
-        if (state.getClass() == CoordinatedPartitionState.class){
-            CoordinatedPartitionState cord_state = (CoordinatedPartitionState) state;
-            //NEW UPDATE RECORDS RULE TO UPFDATE THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAINS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-        }
-        else{
-            //1-UPDATE RECORDS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id);}
+        return machine_id;
+    }
+    
+    //keeps in candidates the partitions of least load offered so far, returns that load
+    private static int offer(int m, int min_load, Candidates candidates, PartitionState state) {
+        int load = state.getMachineLoad(m);
+        if (load<min_load){
+            candidates.clear();
+            candidates.add(m);
+            return load;
         }
-          
-        //*** RELEASE LOCK
-        u_record.releaseLock();
-        v_record.releaseLock();
+        if (load==min_load){ candidates.add(m); }
+        return min_load;
     }
 }
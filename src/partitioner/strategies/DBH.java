@@ -27,49 +27,111 @@ package partitioner.strategies;
 
 import core.Edge;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import partitioner.DeferredStrategy;
+import partitioner.HashedStrategy;
 import partitioner.PartitionState;
 import partitioner.PartitionStrategy;
 import partitioner.Record;
-import partitioner.coordinated_state.CoordinatedPartitionState;
+import partitioner.VertexLocks;
 import application.Globals;
 
-public class DBH implements PartitionStrategy{
+public class DBH implements PartitionStrategy, DeferredStrategy, HashedStrategy{
     public static final int MAX_SHRINK = 100;
     double seed;
     int shrink;
     private Globals GLOBALS;
+    private final int[] degrees; //exact degrees indexed by vertex id, null to use the partial degrees seen so far
+    private AtomicIntegerArray counters; //partial degrees for assign when degrees is null, see useDegreeCounters
+    
+    private final VertexLocks locks;
     
     public DBH(Globals G) {
+        this(G, null, new VertexLocks());
+    }
+    
+    public DBH(Globals G, int[] degrees, VertexLocks locks) {
         seed = Math.random();
         Random r = new Random(); 
         shrink = r.nextInt(MAX_SHRINK);
         this.GLOBALS = G;
+        this.degrees = degrees;
+        this.locks = locks;
+    }
+    
+    @Override
+    public double getHashSeed() {
+        return seed;
+    }
+    
+    @Override
+    public int getHashShrink() {
+        return shrink;
+    }
+    
+    @Override
+    public void setHashParameters(double seed, int shrink) {
+        this.seed = seed;
+        this.shrink = shrink;
     }
     
     @Override
     public void performStep(Edge e, PartitionState state) {
-        int P = GLOBALS.P;
-        int u = e.getU();
-        int v = e.getV();
-        
+        performStep(e.getU(), e.getV(), state);
+    }
+
+    @Override
+    public void performStep(int u, int v, PartitionState state) {
         Record u_record = state.getRecord(u);
         Record v_record = state.getRecord(v);
         
         //*** ASK FOR LOCK
-        int sleep = 2; while (!u_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2);}
-        sleep = 2; while (!v_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2); 
-        if (sleep>GLOBALS.SLEEP_LIMIT){u_record.releaseLock(); performStep(e,state); return;} //TO AVOID DEADLOCK
-        }
+        locks.lock(u, u_record, v, v_record);
         //*** LOCK TAKEN
         
+        int degree_u = (degrees!=null) ? degrees[u] : u_record.getDegree() +1;
+        int degree_v = (degrees!=null) ? degrees[v] : v_record.getDegree() +1;
+        int machine_id = pickPartition(u, v, degree_u, degree_v);
+        
+        //UPDATE EDGES
+        state.incrementMachineLoad(machine_id,u,v);
+        
+        //UPDATE RECORDS
+        //1-UPDATE RECORDS AND THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAIN
+        if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        
+        //3-UPDATE DEGREES
+        u_record.incrementDegree();
+        v_record.incrementDegree();
+        
+        //*** RELEASE LOCK
+        locks.unlock(u_record, v_record);
+    }
+    
+    //vertices: the vertex ids are in 0..vertices-1; the partial degrees are then counted without the records
+    public void useDegreeCounters(int vertices) {
+        counters = new AtomicIntegerArray(vertices);
+    }
+    
+    @Override
+    public int assign(int u, int v, PartitionState state) {
+        int degree_u = (degrees!=null) ? degrees[u] : counters.incrementAndGet(u);
+        int degree_v = (degrees!=null) ? degrees[v] : counters.incrementAndGet(v);
+        int machine_id = pickPartition(u, v, degree_u, degree_v);
+        state.incrementMachineLoad(machine_id,u,v);
+        return machine_id;
+    }
+    
+    //the lower degree endpoint is cut: the edge goes to the shard of the other one
+    private int pickPartition(int u, int v, int degree_u, int degree_v) {
+        int P = GLOBALS.P;
         int machine_id = -1; 
         
         int shard_u = Math.abs((int) ( (int) u*seed*shrink) % P);  
         int shard_v = Math.abs((int) ( (int) v*seed*shrink) % P);  
         
-        int degree_u = u_record.getDegree() +1;
-        int degree_v = v_record.getDegree() +1;
-        
         if (degree_v<degree_u){
             machine_id = shard_v;
         }
@@ -78,8 +140,7 @@ public class DBH implements PartitionStrategy{
         }
         else{ //RANDOM CHOICE
             //*** PICK A RANDOM ELEMENT FROM CANDIDATES
-            Random r = new Random(); 
-            int choice = r.nextInt(2);
+            int choice = ThreadLocalRandom.current().nextInt(2);
             if (choice == 0){
                 machine_id = shard_u;
             }
@@ -91,28 +152,6 @@ public class DBH implements PartitionStrategy{
                 System.exit(-1);
             }
         }
-        //UPDATE EDGES
-        state.incrementMachineLoad(machine_id,e);
-        
-        //UPDATE RECORDS
-        if (state.getClass() == CoordinatedPartitionState.class){
-            CoordinatedPartitionState cord_state = (CoordinatedPartitionState) state;
-            //NEW UPDATE RECORDS RULE TO UPFDATE THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAINS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-        }
-        else{
-            //1-UPDATE RECORDS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id);}
-        }
-        
-        //3-UPDATE DEGREES
-        u_record.incrementDegree();
-        v_record.incrementDegree();
-        
-        //*** RELEASE LOCK
-        u_record.releaseLock();
-        v_record.releaseLock();
+        return machine_id;
     }
 }
\ No newline at end of file
@@ -26,39 +26,52 @@
 package partitioner.strategies;
 
 import core.Edge;
-import java.util.LinkedList;
-import java.util.Random;
 import partitioner.PartitionState;
 import partitioner.PartitionStrategy;
 import partitioner.Record;
-import partitioner.coordinated_state.CoordinatedPartitionState;
+import partitioner.VertexLocks;
+import partitioner.strategies.utils.Candidates;
+import partitioner.strategies.utils.SparseScoring;
+import partitioner.strategies.utils.VectorKernel;
 import application.Globals;
 
 public class Greedy implements PartitionStrategy{
     
     private Globals GLOBALS;
+    private final VertexLocks locks;
+    private final ThreadLocal<Candidates> buffers;
+    private final VectorKernel vector; //-scoring vector, null otherwise
+    private final boolean sparse; //-scoring sparse
     
     public Greedy(Globals G){
+        this(G, new VertexLocks());
+    }
+    
+    public Greedy(Globals G, VertexLocks locks){
         this.GLOBALS = G;
+        this.locks = locks;
+        this.buffers = Candidates.perThread(G.P);
+        this.vector = G.SCORING.equalsIgnoreCase("vector") ? VectorKernel.load() : null; //scalar if it cannot be loaded
+        this.sparse = G.SCORING.equalsIgnoreCase("sparse");
     }
     
 
     @Override
     public void performStep(Edge e, PartitionState state) {
+        performStep(e.getU(), e.getV(), state);
+    }
+
+    @Override
+    public void performStep(int u, int v, PartitionState state) {
         
         int P = GLOBALS.P;
         int epsilon = 1;
-        int u = e.getU();
-        int v = e.getV();
         
         Record u_record = state.getRecord(u);
         Record v_record = state.getRecord(v);
         
         //*** ASK FOR LOCK
-        int sleep = 2; while (!u_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2);}
-        sleep = 2; while (!v_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2); 
-        if (sleep>GLOBALS.SLEEP_LIMIT){u_record.releaseLock(); performStep(e,state); return;} //TO AVOID DEADLOCK
-        }
+        locks.lock(u, u_record, v, v_record);
         //*** LOCK TAKEN
         
         int machine_id = -1; 
@@ -66,38 +79,56 @@ public class Greedy implements PartitionStrategy{
         //*** COMPUTE MAX AND MIN LOAD
         int MIN_LOAD = state.getMinLoad();
         int MAX_LOAD = state.getMaxLoad();
+        Candidates candidates = buffers.get();
+        int[] loads = candidates.loads;
+        if (!sparse){ state.snapshotMachineLoads(loads); } //all the loads at once, without locking
+        double range = (epsilon + MAX_LOAD - MIN_LOAD);
         
         //*** COMPUTE SCORES, FIND MIN SCORE, AND COMPUTE CANDIDATES PARITIONS
-        LinkedList<Integer> candidates = new LinkedList<Integer>();
+        candidates.clear();
         double MAX_SCORE = 0;
-        for (int m = 0; m<P; m++){
-            int sd = 0;
-            int td = 0;
-            if (u_record.hasReplicaInPartition(m)){ sd = 1;}
-            if (v_record.hasReplicaInPartition(m)){ td = 1;}
-            int load = state.getMachineLoad(m);
+        if (sparse){
+            //*** ONLY A(u), A(v) AND THE LEAST LOADED PARTITIONS (SEE SparseScoring)
+            u_record.getPartitionWords(candidates.u_partitions);
+            v_record.getPartitionWords(candidates.v_partitions);
+            MAX_SCORE = SparseScoring.score(candidates, state, state.getLoadIndex(), P, 1, 1, 1, MAX_LOAD, range);
+        }
+        else if (vector!=null){
+            //*** ALL THE PARTITIONS AT ONCE (SEE VectorKernel)
+            u_record.getPartitionWords(candidates.u_partitions);
+            v_record.getPartitionWords(candidates.v_partitions);
+            MAX_SCORE = vector.score(candidates, P, 1, 1, 1, MAX_LOAD, range);
+        }
+        else{
+            for (int m = 0; m<P; m++){
+                int sd = 0;
+                int td = 0;
+                if (u_record.hasReplicaInPartition(m)){ sd = 1;}
+                if (v_record.hasReplicaInPartition(m)){ td = 1;}
+                int load = loads[m];
             
-            //OLD BALANCE
-            double bal = (MAX_LOAD-load);
-            bal /= (epsilon + MAX_LOAD - MIN_LOAD);
-            if (bal<0){ bal = 0;}
-            double SCORE_m = sd + td + bal;
+                //OLD BALANCE
+                double bal = (MAX_LOAD-load);
+                bal /= range;
+                if (bal<0){ bal = 0;}
+                double SCORE_m = sd + td + bal;
             
-            //NEW BALANCE
-//            double bal = (MAX_LOAD-load);
-//            bal /= (epsilon + MAX_LOAD);
-//            if (bal<0){ bal = 0;}
-//            double SCORE_m = sd + td + GLOBALS.ALPHA* bal;
+                //NEW BALANCE
+//                double bal = (MAX_LOAD-load);
+//                bal /= (epsilon + MAX_LOAD);
+//                if (bal<0){ bal = 0;}
+//                double SCORE_m = sd + td + GLOBALS.ALPHA* bal;
             
-            if (SCORE_m>MAX_SCORE){
-                MAX_SCORE = SCORE_m;
-                candidates.clear();
-                candidates.add(m);
+                if (SCORE_m>MAX_SCORE){
+                    MAX_SCORE = SCORE_m;
+                    candidates.clear();
+                    candidates.add(m);
+                }
+                else if (SCORE_m==MAX_SCORE){
+                    candidates.add(m);
+                }
             }
-            else if (SCORE_m==MAX_SCORE){
-                candidates.add(m);
-            }
-        }   
+        }
         
         //*** CHECK TO AVOID ERRORS
         if (candidates.isEmpty()){
@@ -107,28 +138,16 @@ public class Greedy implements PartitionStrategy{
         }
         
         //*** PICK A RANDOM ELEMENT FROM CANDIDATES
-        Random r = new Random(); 
-        int choice = r.nextInt(candidates.size());
-        machine_id = candidates.get(choice);
+        machine_id = candidates.pick();
         
-        //1-UPDATE RECORDS
-        if (state.getClass() == CoordinatedPartitionState.class){
-            CoordinatedPartitionState cord_state = (CoordinatedPartitionState) state;
-            //NEW UPDATE RECORDS RULE TO UPFDATE THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAINS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-        }
-        else{
-            //1-UPDATE RECORDS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id);}
-        }
+        //1-UPDATE RECORDS AND THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAIN
+        if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
         
         //2-UPDATE EDGES
-        state.incrementMachineLoad(machine_id,e);
+        state.incrementMachineLoad(machine_id,u,v);
         
         //*** RELEASE LOCK
-        u_record.releaseLock();
-        v_record.releaseLock();
+        locks.unlock(u_record, v_record);
     }
 }
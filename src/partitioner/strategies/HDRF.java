@@ -26,81 +26,148 @@
 package partitioner.strategies;
 
 import core.Edge;
-import java.util.LinkedList;
-import java.util.Random;
 import partitioner.PartitionState;
-import partitioner.coordinated_state.CoordinatedPartitionState;
 import partitioner.PartitionStrategy;
 import partitioner.Record;
+import partitioner.VertexLocks;
+import partitioner.strategies.utils.Candidates;
+import partitioner.strategies.utils.SparseScoring;
+import partitioner.strategies.utils.VectorKernel;
 import application.Globals;
 
 public class HDRF implements PartitionStrategy{
     
+    public static final int OPTIMISTIC_ATTEMPTS = 3; //lock-free attempts of a step before it takes the locks
+    
     private final Globals GLOBALS;
+    private final int[] degrees; //exact degrees indexed by vertex id, null to use the partial degrees seen so far
+    
+    private final VertexLocks locks;
+    private final ThreadLocal<Candidates> buffers;
+    private final VectorKernel vector; //-scoring vector, null otherwise
+    private final boolean sparse; //-scoring sparse
+    private final boolean optimistic; //-execution optimistic
     
     public HDRF(Globals G){
+        this(G, null, new VertexLocks());
+    }
+    
+    public HDRF(Globals G, int[] degrees, VertexLocks locks){
         this.GLOBALS = G;
+        this.degrees = degrees;
+        this.locks = locks;
+        this.buffers = Candidates.perThread(G.P);
+        this.vector = G.SCORING.equalsIgnoreCase("vector") ? VectorKernel.load() : null; //scalar if it cannot be loaded
+        this.sparse = G.SCORING.equalsIgnoreCase("sparse");
+        this.optimistic = G.EXECUTION.equalsIgnoreCase("optimistic");
     }
 
     @Override
     public void performStep(Edge e, PartitionState state) {
-        
-        int P = GLOBALS.P;
-        int epsilon = 1;
-        int u = e.getU();
-        int v = e.getV();
+        performStep(e.getU(), e.getV(), state);
+    }
+
+    @Override
+    public void performStep(int u, int v, PartitionState state) {
         
         Record u_record = state.getRecord(u);
         Record v_record = state.getRecord(v);
         
-        //*** ASK FOR LOCK
-        int sleep = 2; while (!u_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2);}
-        sleep = 2; while (!v_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2); 
-        if (sleep>GLOBALS.SLEEP_LIMIT){u_record.releaseLock(); performStep(e,state); return;} //TO AVOID DEADLOCK
+        if (optimistic){
+            //*** SCORE WITHOUT LOCKS, THE LOCKS ARE TAKEN ONLY IF NO RECORD CHANGED IN THE MEANTIME (SEE VertexLocks.tryLock)
+            for (int attempt = 0; attempt<OPTIMISTIC_ATTEMPTS; attempt++){
+                int u_version = u_record.getVersion();
+                int v_version = v_record.getVersion();
+                int machine_id = choosePartition(u, v, u_record, v_record, state);
+                if (locks.tryLock(u, u_record, u_version, v, v_record, v_version)){
+                    update(machine_id, u, v, u_record, v_record, state);
+                    locks.unlock(u_record, v_record);
+                    return;
+                }
+            }
         }
+        
+        //*** ASK FOR LOCK
+        locks.lock(u, u_record, v, v_record);
         //*** LOCK TAKEN
         
+        int machine_id = choosePartition(u, v, u_record, v_record, state);
+        update(machine_id, u, v, u_record, v_record, state);
+        
+        //*** RELEASE LOCK
+        locks.unlock(u_record, v_record);
+    }
+    
+    //the partition with the best score, the replicas of u and v are only read
+    private int choosePartition(int u, int v, Record u_record, Record v_record, PartitionState state) {
+        
+        int P = GLOBALS.P;
+        int epsilon = 1;
+        
         int machine_id = -1; 
         
         //*** COMPUTE MAX AND MIN LOAD
         int MIN_LOAD = state.getMinLoad();
         int MAX_LOAD = state.getMaxLoad();
+        Candidates candidates = buffers.get();
+        int[] loads = candidates.loads;
+        if (!sparse){ state.snapshotMachineLoads(loads); } //all the loads at once, without locking
+        
+        //*** REPLICATION TERMS AND BALANCE DENOMINATOR, THE SAME FOR EVERY PARTITION
+        int degree_u = (degrees!=null) ? degrees[u] : u_record.getDegree() +1;
+        int degree_v = (degrees!=null) ? degrees[v] : v_record.getDegree() +1;
+        int SUM = degree_u + degree_v;
+        double gu = degree_u; gu/=SUM; gu = 1+(1-gu);
+        double gv = degree_v; gv/=SUM; gv = 1+(1-gv);
+        double range = (epsilon + MAX_LOAD - MIN_LOAD);
+        double LAMBDA = GLOBALS.LAMBDA;
         
         //*** COMPUTE SCORES, FIND MIN SCORE, AND COMPUTE CANDIDATES PARITIONS
-        LinkedList<Integer> candidates = new LinkedList<Integer>();
+        candidates.clear();
         double MAX_SCORE = 0;
         
-        for (int m = 0; m<P; m++){
+        if (sparse){
+            //*** ONLY A(u), A(v) AND THE LEAST LOADED PARTITIONS (SEE SparseScoring)
+            u_record.getPartitionWords(candidates.u_partitions);
+            v_record.getPartitionWords(candidates.v_partitions);
+            MAX_SCORE = SparseScoring.score(candidates, state, state.getLoadIndex(), P, gu, gv, LAMBDA, MAX_LOAD, range);
+        }
+        else if (vector!=null){
+            //*** ALL THE PARTITIONS AT ONCE (SEE VectorKernel)
+            u_record.getPartitionWords(candidates.u_partitions);
+            v_record.getPartitionWords(candidates.v_partitions);
+            MAX_SCORE = vector.score(candidates, P, gu, gv, LAMBDA, MAX_LOAD, range);
+        }
+        else{
+            for (int m = 0; m<P; m++){
             
-            int degree_u = u_record.getDegree() +1;
-            int degree_v = v_record.getDegree() +1;
-            int SUM = degree_u + degree_v;
-            double fu = 0;
-            double fv = 0;
-            if (u_record.hasReplicaInPartition(m)){ fu = degree_u; fu/=SUM; fu = 1+(1-fu);}
-            if (v_record.hasReplicaInPartition(m)){ fv = degree_v; fv/=SUM; fv = 1+(1-fv);}
-            int load = state.getMachineLoad(m);
-            double bal = (MAX_LOAD-load);
-            bal /= (epsilon + MAX_LOAD - MIN_LOAD);
-            if (bal<0){ bal = 0;}
-            double SCORE_m = fu + fv + GLOBALS.LAMBDA*bal;
-            if (SCORE_m<0){
-                System.out.println("ERRORE: SCORE_m<0");
-                System.out.println("fu: "+fu);
-                System.out.println("fv: "+fv);
-                System.out.println("GLOBALS.LAMBDA: "+GLOBALS.LAMBDA);
-                System.out.println("bal: "+bal);
-                System.exit(-1);
-            }
-            if (SCORE_m>MAX_SCORE){
-                MAX_SCORE = SCORE_m;
-                candidates.clear();
-                candidates.add(m);
-            }
-            else if (SCORE_m==MAX_SCORE){
-                candidates.add(m);
+                double fu = 0;
+                double fv = 0;
+                if (u_record.hasReplicaInPartition(m)){ fu = gu;}
+                if (v_record.hasReplicaInPartition(m)){ fv = gv;}
+                int load = loads[m];
+                double bal = (MAX_LOAD-load);
+                bal /= range;
+                if (bal<0){ bal = 0;}
+                double SCORE_m = fu + fv + LAMBDA*bal;
+                if (SCORE_m<0){
+                    System.out.println("ERRORE: SCORE_m<0");
+                    System.out.println("fu: "+fu);
+                    System.out.println("fv: "+fv);
+                    System.out.println("GLOBALS.LAMBDA: "+LAMBDA);
+                    System.out.println("bal: "+bal);
+                    System.exit(-1);
+                }
+                if (SCORE_m>MAX_SCORE){
+                    MAX_SCORE = SCORE_m;
+                    candidates.clear();
+                    candidates.add(m);
+                }
+                else if (SCORE_m==MAX_SCORE){
+                    candidates.add(m);
+                }
             }
-        }   
+        }
         
         //*** CHECK TO AVOID ERRORS
         if (candidates.isEmpty()){
@@ -110,32 +177,22 @@ public class HDRF implements PartitionStrategy{
         }
         
         //*** PICK A RANDOM ELEMENT FROM CANDIDATES
-        Random r = new Random(); 
-        int choice = r.nextInt(candidates.size());
-        machine_id = candidates.get(choice);
+        machine_id = candidates.pick();
+        return machine_id;
+    }
+    
+    //with both locks held
+    private void update(int machine_id, int u, int v, Record u_record, Record v_record, PartitionState state) {
         
-        
-        if (state.getClass() == CoordinatedPartitionState.class){
-            CoordinatedPartitionState cord_state = (CoordinatedPartitionState) state;
-            //NEW UPDATE RECORDS RULE TO UPFDATE THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAINS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-        }
-        else{
-            //1-UPDATE RECORDS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id);}
-        }
+        //1-UPDATE RECORDS AND THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAIN
+        if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
         
         //2-UPDATE EDGES
-        state.incrementMachineLoad(machine_id,e);
+        state.incrementMachineLoad(machine_id,u,v);
         
         //3-UPDATE DEGREES
         u_record.incrementDegree();
         v_record.incrementDegree();
-        
-        //*** RELEASE LOCK
-        u_record.releaseLock();
-        v_record.releaseLock();
     }
 }
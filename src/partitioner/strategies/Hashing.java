@@ -26,59 +26,82 @@
 
 package partitioner.strategies;
 
-import partitioner.coordinated_state.CoordinatedPartitionState;
 import core.Edge;
+import partitioner.DeferredStrategy;
+import partitioner.HashedStrategy;
 import partitioner.PartitionState;
 import partitioner.PartitionStrategy;
 import partitioner.Record;
+import partitioner.VertexLocks;
 import application.Globals;
 
-public class Hashing implements PartitionStrategy{
+public class Hashing implements PartitionStrategy, DeferredStrategy, HashedStrategy{
 
     double seed;
     private Globals GLOBALS;
+    private final VertexLocks locks;
     
     public Hashing(Globals G) {
+        this(G, new VertexLocks());
+    }
+    
+    public Hashing(Globals G, VertexLocks locks) {
         seed = Math.random();
         this.GLOBALS = G;
+        this.locks = locks;
+    }
+    
+    @Override
+    public double getHashSeed() {
+        return seed;
+    }
+    
+    @Override
+    public int getHashShrink() {
+        return 0;
+    }
+    
+    @Override
+    public void setHashParameters(double seed, int shrink) {
+        this.seed = seed;
     }
     
     @Override
     public void performStep(Edge e, PartitionState state) {
-        int P = GLOBALS.P;
-        int u = e.getU();
-        int v = e.getV();
-        
+        performStep(e.getU(), e.getV(), state);
+    }
+
+    @Override
+    public void performStep(int u, int v, PartitionState state) {
         Record u_record = state.getRecord(u);
         Record v_record = state.getRecord(v);
         
         //*** ASK FOR LOCK
-        int sleep = 2; while (!u_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2);}
-        sleep = 2; while (!v_record.getLock()){ try{ Thread.sleep(sleep); }catch(Exception ex){} sleep = (int) Math.pow(sleep, 2); 
-        if (sleep>GLOBALS.SLEEP_LIMIT){u_record.releaseLock(); performStep(e,state); return;} //TO AVOID DEADLOCK
-        }
+        locks.lock(u, u_record, v, v_record);
         //*** LOCK TAKEN
         
-        int machine_id = Math.abs((int) ( (int) u*v*seed) % P);  
+        int machine_id = hash(u, v);
         
         //UPDATE EDGES
-        state.incrementMachineLoad(machine_id,e);
+        state.incrementMachineLoad(machine_id,u,v);
         
-        //UPDATE RECORDS
-        if (state.getClass() == CoordinatedPartitionState.class){
-            CoordinatedPartitionState cord_state = (CoordinatedPartitionState) state;
-            //NEW UPDATE RECORDS RULE TO UPFDATE THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAINS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); cord_state.incrementMachineLoadVertices(machine_id);}
-        }
-        else{
-            //1-UPDATE RECORDS
-            if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id);}
-            if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id);}
-        }
+        //UPDATE RECORDS AND THE SIZE OF THE PARTITIONS EXPRESSED AS THE NUMBER OF VERTICES THEY CONTAIN
+        if (!u_record.hasReplicaInPartition(machine_id)){ u_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
+        if (!v_record.hasReplicaInPartition(machine_id)){ v_record.addPartition(machine_id); state.incrementMachineLoadVertices(machine_id);}
           
         //*** RELEASE LOCK
-        u_record.releaseLock();
-        v_record.releaseLock();
+        locks.unlock(u_record, v_record);
+    }
+
+    @Override
+    public int assign(int u, int v, PartitionState state) {
+        int machine_id = hash(u, v);
+        state.incrementMachineLoad(machine_id,u,v);
+        return machine_id;
+    }
+
+    //the product u*v overflows as an int before it is scaled by the seed, as it always did
+    private int hash(int u, int v){
+        return Math.abs((int) (u*v*seed) % GLOBALS.P);
     }
 }
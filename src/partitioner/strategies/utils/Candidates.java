@@ -0,0 +1,79 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// Candidates.java: reusable per-thread buffers for the scoring step (machine loads and best-score partitions)
+
+package partitioner.strategies.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Candidates {
+
+    public final int[] loads; //copy of the machine loads, filled by the strategy
+    public final long[] u_partitions; //replica bitsets of the two endpoints, see VectorScoring
+    public final long[] v_partitions;
+    public final double[] scores; //score of each partition, see VectorScoring
+    private final int[] partitions;
+    private int size;
+
+    public Candidates(int P){
+        loads = new int[P];
+        u_partitions = new long[(P+63)/64];
+        v_partitions = new long[(P+63)/64];
+        scores = new double[P];
+        partitions = new int[P];
+        size = 0;
+    }
+
+    //one instance per partitioner thread, so the scoring step allocates nothing
+    public static ThreadLocal<Candidates> perThread(final int P){
+        return new ThreadLocal<Candidates>(){
+            @Override
+            protected Candidates initialValue(){
+                return new Candidates(P);
+            }
+        };
+    }
+
+    public void clear(){
+        size = 0;
+    }
+
+    public void add(int m){
+        partitions[size++] = m;
+    }
+
+    public boolean isEmpty(){
+        return size==0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    //uniform choice among the candidates
+    public int pick(){
+        if (size==1){ return partitions[0]; }
+        return partitions[ThreadLocalRandom.current().nextInt(size)];
+    }
+}
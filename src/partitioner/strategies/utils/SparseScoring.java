@@ -0,0 +1,119 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// SparseScoring.java: scores only the partitions of the two endpoints plus the least loaded ones, used with -scoring sparse
+
+package partitioner.strategies.utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import partitioner.LoadIndex;
+import partitioner.PartitionState;
+
+public class SparseScoring {
+
+    private static final int MAX_TRIES = 8; //draws from the index before falling back to a full scan
+
+    //same scores and ties as the scalar loops of HDRF and Greedy: score of partition m is ru if u is replicated in m,
+    //plus rv if v is, plus lambda*max(0, (MAX_LOAD-load_m)/range)
+    //a partition outside A(u) and A(v) scores on balance alone, which never grows with the load, so the best of them
+    //are those at the least load outside A(u) and A(v); the index gives that load and draws one of them uniformly
+    //reads c.u_partitions and c.v_partitions, leaves the partitions with the highest score in c (or one of them, drawn
+    //uniformly among all of them, when the least loaded partitions tie) and returns that score
+    public static double score(Candidates c, PartitionState state, LoadIndex index, int P, double ru, double rv, double lambda, int MAX_LOAD, double range){
+        long[] u_partitions = c.u_partitions;
+        long[] v_partitions = c.v_partitions;
+        int min = index.getMin();
+        int at_min = index.getMinCount();
+        int replicas_at_min = 0; //partitions of A(u) and A(v) whose load is min
+        c.clear();
+        double MAX_SCORE = -1;
+        for (int w = 0; w<u_partitions.length; w++){
+            long bits = u_partitions[w] | v_partitions[w];
+            while (bits!=0){
+                int m = 64*w + Long.numberOfTrailingZeros(bits);
+                bits &= bits-1;
+                double fu = ((u_partitions[w] & (1L << m))!=0) ? ru : 0;
+                double fv = ((v_partitions[w] & (1L << m))!=0) ? rv : 0;
+                int load = state.getMachineLoad(m);
+                if (load==min){ replicas_at_min++; }
+                double bal = (MAX_LOAD-load);
+                bal /= range;
+                if (bal<0){ bal = 0; }
+                double SCORE_m = fu + fv + lambda*bal;
+                if (SCORE_m>MAX_SCORE){
+                    MAX_SCORE = SCORE_m;
+                    c.clear();
+                    c.add(m);
+                }
+                else if (SCORE_m==MAX_SCORE){
+                    c.add(m);
+                }
+            }
+        }
+        int others = at_min - replicas_at_min; //least loaded partitions outside A(u) and A(v)
+        if (others<=0){ return scan(c, state, P, ru, rv, lambda, MAX_LOAD, range); } //they are all replicas, the next load is needed
+        double bal = (MAX_LOAD-min);
+        bal /= range;
+        if (bal<0){ bal = 0; }
+        double OTHER_SCORE = 0 + 0 + lambda*bal;
+        if (OTHER_SCORE==0 && at_min<P){ return scan(c, state, P, ru, rv, lambda, MAX_LOAD, range); } //lambda 0, every load ties
+        if (OTHER_SCORE<MAX_SCORE){ return MAX_SCORE; }
+        if (OTHER_SCORE==MAX_SCORE && ThreadLocalRandom.current().nextInt(c.size()+others)<c.size()){ return MAX_SCORE; }
+        for (int t = 0; t<MAX_TRIES; t++){
+            int m = index.select(ThreadLocalRandom.current().nextInt(at_min), min);
+            if (m<0){ continue; }
+            int load = state.getMachineLoad(m);
+            if (load!=min){ index.repair(m, load); continue; }
+            if ((u_partitions[m>>>6] & (1L << m))!=0 || (v_partitions[m>>>6] & (1L << m))!=0){ continue; }
+            c.clear();
+            c.add(m);
+            return OTHER_SCORE;
+        }
+        return scan(c, state, P, ru, rv, lambda, MAX_LOAD, range);
+    }
+
+    //every partition, as the scalar loops do
+    private static double scan(Candidates c, PartitionState state, int P, double ru, double rv, double lambda, int MAX_LOAD, double range){
+        long[] u_partitions = c.u_partitions;
+        long[] v_partitions = c.v_partitions;
+        c.clear();
+        double MAX_SCORE = 0;
+        for (int m = 0; m<P; m++){
+            double fu = ((u_partitions[m>>>6] & (1L << m))!=0) ? ru : 0;
+            double fv = ((v_partitions[m>>>6] & (1L << m))!=0) ? rv : 0;
+            double bal = (MAX_LOAD-state.getMachineLoad(m));
+            bal /= range;
+            if (bal<0){ bal = 0; }
+            double SCORE_m = fu + fv + lambda*bal;
+            if (SCORE_m>MAX_SCORE){
+                MAX_SCORE = SCORE_m;
+                c.clear();
+                c.add(m);
+            }
+            else if (SCORE_m==MAX_SCORE){
+                c.add(m);
+            }
+        }
+        return MAX_SCORE;
+    }
+}
@@ -0,0 +1,48 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// VectorKernel.java: scoring of all the partitions at once used with -scoring vector, implemented by VectorScoring (src-vector)
+
+package partitioner.strategies.utils;
+
+public interface VectorKernel {
+    
+    //kept out of src so that the default build does not need the incubating jdk.incubator.vector module
+    public static final String IMPLEMENTATION = "partitioner.strategies.utils.VectorScoring";
+    
+    //score of partition m: ru if u is replicated in m, plus rv if v is, plus lambda*max(0, (MAX_LOAD-load_m)/range)
+    //reads c.loads, c.u_partitions and c.v_partitions, leaves the partitions with the highest score in c and returns it
+    public double score(Candidates c, int P, double ru, double rv, double lambda, int MAX_LOAD, double range);
+    
+    //null if VectorScoring was not compiled or the jdk.incubator.vector module is not loaded (java --add-modules)
+    public static VectorKernel load(){
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){ return null; }
+        try {
+            return (VectorKernel) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        } catch (LinkageError ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// AllocationCheck.java: fails if a scoring strategy allocates on the heap while partitioning an edge on the array or off-heap state
+
+package bench;
+
+import application.Globals;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import partitioner.PartitionState;
+import partitioner.PartitionStrategy;
+import partitioner.coordinated_state.ArrayPartitionState;
+import partitioner.coordinated_state.OffHeapPartitionState;
+import partitioner.strategies.Constrained;
+import partitioner.strategies.DBH;
+import partitioner.strategies.Greedy;
+import partitioner.strategies.HDRF;
+import partitioner.strategies.Hashing;
+
+//usage: java -cp build bench.AllocationCheck [nparts]
+//the array and the off-heap states are checked: the map state (CoordinatedPartitionState) boxes the vertex ids of its HashMap
+//lookups and allocates the records of new vertices, so it is not covered
+//nparts defaults to 16, grid needs a square number
+public class AllocationCheck {
+
+    private static final int VERTICES = 100000;
+    private static final int EDGES = 1000000; //measured, after as many warm-up edges
+    private static final String[] ALGORITHMS = {"hdrf", "greedy", "hashing", "dbh", "grid"};
+
+    private static final String[] STATES = {"array", "offheap"};
+
+    public static void main(String[] args) throws IOException{
+        String P = (args.length>0) ? args[0] : "16";
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!mx.isThreadAllocatedMemorySupported()){
+            System.out.println("\nError: this JVM does not count the bytes allocated by a thread.\n\n");
+            System.exit((-1));
+        }
+        mx.setThreadAllocatedMemoryEnabled(true);
+        int[] us = new int[2*EDGES];
+        int[] vs = new int[2*EDGES];
+        SplittableRandom r = new SplittableRandom(1);
+        for (int i = 0; i<us.length; i++){
+            us[i] = r.nextInt(VERTICES);
+            vs[i] = r.nextInt(VERTICES);
+        }
+        boolean failed = false;
+        long thread = Thread.currentThread().getId();
+        for (String kind : STATES){
+            for (String algorithm : ALGORITHMS){
+                Globals GLOBALS = new Globals(new String[]{"allocation_check", P, "-algorithm", algorithm, "-threads", "1"});
+                PartitionStrategy strategy = create(GLOBALS);
+                PartitionState state = kind.equals("array") ? new ArrayPartitionState(GLOBALS, VERTICES, null)
+                    : new OffHeapPartitionState(GLOBALS, VERTICES, null, null);
+                for (int i = 0; i<EDGES; i++){ strategy.performStep(us[i], vs[i], state); }
+                long before = mx.getThreadAllocatedBytes(thread);
+                for (int i = EDGES; i<2*EDGES; i++){ strategy.performStep(us[i], vs[i], state); }
+                long bytes = mx.getThreadAllocatedBytes(thread) - before;
+                double per_edge = (double) bytes / EDGES;
+                System.out.println(kind+" "+algorithm+": "+per_edge+" bytes per edge"+((bytes>0) ? " FAILED" : ""));
+                if (bytes>0){ failed = true; }
+            }
+        }
+        if (failed){ System.exit((-1)); }
+    }
+
+    private static PartitionStrategy create(Globals GLOBALS){
+        String algorithm = GLOBALS.PARTITION_STRATEGY;
+        if (algorithm.equalsIgnoreCase("hdrf")){ return new HDRF(GLOBALS); }
+        if (algorithm.equalsIgnoreCase("greedy")){ return new Greedy(GLOBALS); }
+        if (algorithm.equalsIgnoreCase("hashing")){ return new Hashing(GLOBALS); }
+        if (algorithm.equalsIgnoreCase("dbh")){ return new DBH(GLOBALS); }
+        return new Constrained(GLOBALS);
+    }
+}
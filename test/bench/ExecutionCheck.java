@@ -0,0 +1,140 @@
+// Copyright (C) 2015 Fabio Petroni
+// Contact: http://www.fabiopetroni.com
+//
+// This file is part of VGP (a software package for one-pass Vertex-cut balanced Graph Partitioning).
+//
+// VGP is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// VGP is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with VGP.  If not, see <http://www.gnu.org/licenses/>.
+//
+// Based on the publication:
+// - Fabio Petroni, Leonardo Querzoni, Giorgio Iacoboni, Khuzaima Daudjee and Shahin Kamali (2015): 
+//   "HDRF: Efficient Stream-Based Partitioning for Power-Law Graphs".
+//   CIKM, 2014.
+//
+// ExecutionCheck.java: fails if an -execution mode without vertex locks loses, duplicates or miscounts an assignment
+
+package bench;
+
+import application.Globals;
+import core.Edge;
+import core.EdgeBuffer;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import partitioner.PartitionState;
+import partitioner.Partitioner;
+import partitioner.Record;
+import partitioner.VertexVisitor;
+import partitioner.coordinated_state.ArrayPartitionState;
+
+//usage: java -cp build bench.ExecutionCheck [threads]
+//partitions a generated power-law graph with hdrf under each execution mode and checks that:
+//  - the .edges output holds every edge of the graph exactly once, and the edge loads count it
+//  - the vertex load of each partition is the number of records that replicate the vertex there
+//  - batch and optimistic stay within RF_TOLERANCE of the replication factor of inline (sharded scores an edge
+//    against a snapshot of the remote endpoint, so its replication factor is only reported)
+public class ExecutionCheck {
+
+    private static final int VERTICES = 20000;
+    private static final int EDGES = 300000;
+    private static final String P = "16";
+    private static final double RF_TOLERANCE = 0.05; //relative
+    private static final String[] EXECUTIONS = {"inline", "batch", "sharded", "optimistic"};
+
+    public static void main(String[] args) throws IOException{
+        String threads = (args.length>0) ? args[0] : "4";
+        long[] packed = generate();
+        long[] expected = new long[EDGES];
+        for (int i = 0; i<EDGES; i++){ expected[i] = canonical(Edge.getU(packed[i]), Edge.getV(packed[i])); }
+        Arrays.sort(expected);
+        File output = File.createTempFile("vgp-check", "");
+        boolean failed = false;
+        double inline_rf = 0;
+        for (String execution : EXECUTIONS){
+            Globals GLOBALS = new Globals(new String[]{"execution_check", P, "-algorithm", "hdrf", "-threads", threads,
+                "-execution", execution, "-shuffle", "none", "-output", output.getPath()});
+            PartitionState state = new ArrayPartitionState(GLOBALS, VERTICES, null);
+            new Partitioner(EdgeBuffer.wrap(packed, EDGES), GLOBALS).performCoordinatedPartition(state);
+            state.closeOutput();
+            String error = checkEdges(GLOBALS, state, expected, output.getPath()+".edges");
+            if (error==null){ error = checkReplicas(GLOBALS, state); }
+            double rf = (double) state.getTotalReplicas() / state.getNumVertices();
+            if (execution.equalsIgnoreCase("inline")){ inline_rf = rf; }
+            else if (error==null && !execution.equalsIgnoreCase("sharded") && Math.abs(rf-inline_rf) > RF_TOLERANCE*inline_rf){
+                error = "replication factor "+rf+", inline "+inline_rf;
+            }
+            System.out.println(execution+": replication factor "+rf+((error!=null) ? " FAILED: "+error : ""));
+            if (error!=null){ failed = true; }
+            new File(output.getPath()+".edges").delete();
+        }
+        output.delete();
+        if (failed){ System.exit((-1)); }
+    }
+
+    //power-law degrees: vertex x is an endpoint with probability about proportional to 1/sqrt(x+1)
+    private static long[] generate(){
+        SplittableRandom r = new SplittableRandom(1);
+        long[] result = new long[EDGES];
+        for (int i = 0; i<EDGES; i++){
+            int u = (int) ((long) VERTICES * r.nextDouble() * r.nextDouble());
+            int v = r.nextInt(VERTICES);
+            result[i] = Edge.pack(u, v);
+        }
+        return result;
+    }
+
+    private static long canonical(int u, int v){
+        return (u<v) ? Edge.pack(u, v) : Edge.pack(v, u);
+    }
+
+    //the lines of the .edges file are "u,v: partition"
+    private static String checkEdges(Globals GLOBALS, PartitionState state, long[] expected, String file) throws IOException{
+        long[] found = new long[expected.length];
+        int[] load = new int[GLOBALS.P];
+        int n = 0;
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine())!=null){
+                String[] fields = line.split("[,:]\\s*");
+                if (n==found.length){ return "more edges than the graph in the output"; }
+                found[n++] = canonical(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+                load[Integer.parseInt(fields[2])]++;
+            }
+        } finally {
+            in.close();
+        }
+        if (n<found.length){ return n+" edges of "+found.length+" in the output"; }
+        Arrays.sort(found);
+        if (!Arrays.equals(found, expected)){ return "the output edges are not those of the graph"; }
+        if (!Arrays.equals(load, state.getMachines_load())){ return "the edge loads do not match the output"; }
+        return null;
+    }
+
+    private static String checkReplicas(Globals GLOBALS, PartitionState state){
+        final int[] replicas = new int[GLOBALS.P];
+        state.forEachVertex(new VertexVisitor(){
+            @Override
+            public void visit(int x, Record record){
+                Iterator<Integer> partitions = record.getPartitions();
+                while (partitions.hasNext()){ replicas[partitions.next()]++; }
+            }
+        });
+        if (!Arrays.equals(replicas, state.getMachines_loadVertices())){ return "the vertex loads do not match the replicas"; }
+        return null;
+    }
+}